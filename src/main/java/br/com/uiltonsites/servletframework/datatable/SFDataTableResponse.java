@@ -22,7 +22,7 @@ import br.com.uiltonsites.servletframework.utility.exceptions.SFLoadConfigExcept
 import br.com.uiltonsites.servletframework.utility.SFLogger;
 import br.com.uiltonsites.servletframework.utility.SFQueryHelper;
 import br.com.uiltonsites.servletframework.utility.exceptions.SFQueryHelperException;
-import com.google.gson.Gson;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
 
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -124,7 +124,7 @@ public class SFDataTableResponse {
             }
         }
 
-        return new Gson().toJson(this);
+        return SFSerializers.getGson().toJson(this);
     }
     
     public String countSelect() {
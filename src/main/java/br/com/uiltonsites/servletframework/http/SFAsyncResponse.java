@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFLogger;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+/**
+ * Write the response of an request put in async mode because the method of
+ * the route returned an CompletionStage.<br><br>
+ *
+ * The output is written by the thread that complete the stage, or an error is
+ * written if the timeout of the async context expire first, only the first of
+ * them is used.<br><br>
+ *
+ * When the timeout expire (or the connection fail) the stage is cancelled,
+ * which also release the slot of the route in the bulkhead (maxConcurrency):
+ * the request was already answered, so it don't count anymore. Work that
+ * ignore the cancellation (or stages that can't be cancelled, see cancel)
+ * keep running outside of the limit.
+ *
+ */
+public class SFAsyncResponse implements AsyncListener, BiConsumer<Object, Throwable> {
+
+    protected final SFHttpServlet servlet;
+    protected final SFLogger logger;
+    protected final PrintWriter out;
+    protected final SFServletContainer container;
+    protected final Object instance;
+    protected final AsyncContext asyncContext;
+    protected final AtomicBoolean done = new AtomicBoolean();
+    protected volatile CompletionStage<?> stage;
+
+    /**
+     *
+     * @param servlet
+     * @param logger
+     * @param out
+     * @param container
+     * @param instance the instance returned by getMethodInstance, released when the response is written
+     * @param asyncContext
+     */
+    public SFAsyncResponse(SFHttpServlet servlet, SFLogger logger, PrintWriter out, SFServletContainer container, Object instance, AsyncContext asyncContext) {
+        this.servlet = servlet;
+        this.logger = logger;
+        this.out = out;
+        this.container = container;
+        this.instance = instance;
+        this.asyncContext = asyncContext;
+    }
+
+    /**
+     * Wait for the stage without blocking the current thread
+     *
+     * @param stage
+     */
+    public void start(CompletionStage<?> stage) {
+        this.stage = stage;
+        asyncContext.addListener(this);
+        stage.whenComplete(this);
+    }
+
+    /**
+     * Cancel an stage whose result is not needed anymore, only the stages
+     * whose toCompletableFuture() return the stage itself (ex:
+     * CompletableFuture) are completed by the cancellation
+     *
+     * @param stage can be null
+     * @return true if the stage was cancelled
+     */
+    public static boolean cancel(CompletionStage<?> stage) {
+        if (stage == null) {
+            return false;
+        }
+        try {
+            return stage.toCompletableFuture().cancel(true);
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Called when the stage complete
+     *
+     * @param result
+     * @param error
+     */
+    @Override
+    public void accept(Object result, Throwable error) {
+        if (!done.compareAndSet(false, true)) {
+            // timeout already answered the request
+            return;
+        }
+        try {
+            if (error != null) {
+                servlet.printAsyncError(logger, out, container, unwrap(error));
+            } else {
+                servlet.printOutput(result, out, container);
+            }
+        } catch (IOException | RuntimeException ex) {
+            logger.error("Failed to write async response", ex);
+        } finally {
+            finish();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            servlet.printAsyncTimeout(logger, out, container, asyncContext.getTimeout());
+        } finally {
+            finish();
+            cancel(stage);
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        logger.error("Async request failed", event.getThrowable());
+        finish();
+        cancel(stage);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+        // completed by the container, don't keep the instance
+        if (done.compareAndSet(false, true)) {
+            servlet.releaseMethodInstance(instance);
+            servlet.recordMetrics(container.getRoute(), container);
+        }
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+
+    protected void finish() {
+        servlet.releaseMethodInstance(instance);
+        servlet.recordMetrics(container.getRoute(), container);
+        servlet.finishResponse(out, container.getResponse(), logger);
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException ex) {
+            // already completed by the container
+            logger.debug("Async context already completed");
+        }
+    }
+
+    /**
+     * Get the exception thrown by the method, the stages wrap it in an
+     * CompletionException
+     *
+     * @param error
+     * @return
+     */
+    protected static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFWebMethod;
+import br.com.uiltonsites.servletframework.utility.SFConfig;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limit the number of requests running at the same time in an route, the
+ * requests above the limit wait up to queueTimeout for an slot (at most
+ * limit requests waiting) and are rejected after that.<br><br>
+ *
+ * With adaptive = true the limit start at half of maxConcurrency and is
+ * adjusted by AIMD once per window of requests (limit requests, at least
+ * MIN_WINDOW): when the 25th percentile latency of the window is twice the
+ * baseline (an moving average of the previous windows) the limit is reduced
+ * by 10%, otherwise it grows by 1 if the limit is being used. Slow requests
+ * (cache misses, heavy queries) don't change the limit, only an window where
+ * most requests got slower. All the state is kept in atomics, there's no
+ * lock.
+ *
+ */
+public class SFBulkhead {
+
+    protected static final double TOLERANCE = 2.0;
+    protected static final double BACKOFF = 0.9;
+    protected static final int MIN_WINDOW = 32;
+    protected static final double PERCENTILE = 0.25;
+    /** the baseline follow faster an lower latency than an higher one */
+    protected static final int BASELINE_DOWN = 8;
+    protected static final int BASELINE_UP = 64;
+    protected static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    protected final int maxConcurrency;
+    protected final long queueTimeout;
+    protected final boolean adaptive;
+    protected final int retryAfter;
+    protected final AtomicInteger inFlight = new AtomicInteger();
+    protected final AtomicInteger waiting = new AtomicInteger();
+    protected final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger limit;
+    protected final AtomicLong baseline = new AtomicLong(-1);
+    protected final AtomicReference<Window> window;
+    protected final LongAdder rejected = new LongAdder();
+
+    public SFBulkhead(int maxConcurrency) {
+        this(maxConcurrency, 0, false, SFWebMethod.defaultRetryAfter);
+    }
+
+    /**
+     * @param maxConcurrency
+     * @param queueTimeout milliseconds that an request can wait for an slot,
+     * 0 to reject immediately
+     * @param adaptive adjust the limit by the latency, up to maxConcurrency
+     * @param retryAfter seconds sent in the Retry-After of the rejected
+     * requests
+     */
+    public SFBulkhead(int maxConcurrency, long queueTimeout, boolean adaptive, int retryAfter) {
+        this.maxConcurrency = maxConcurrency;
+        this.queueTimeout = TimeUnit.MILLISECONDS.toNanos(Math.max(queueTimeout, 0));
+        this.adaptive = adaptive;
+        this.retryAfter = retryAfter;
+        this.limit = new AtomicInteger(adaptive ? Math.max(1, maxConcurrency / 2) : maxConcurrency);
+        this.window = new AtomicReference<>(adaptive ? newWindow() : null);
+    }
+
+    /**
+     * Create the bulkhead of an route, the attributes of SFWebMethod can be
+     * replaced by the properties [route].maxConcurrency, [route].queueTimeout,
+     * [route].adaptiveConcurrency and [route].retryAfter of the config
+     * (ex: com.example.MyServlet.list.maxConcurrency=20)
+     *
+     * @param name the name of the route (see SFRoute.getName)
+     * @param webMethod can be null
+     * @param config can be null
+     * @return the bulkhead or null if the route is unlimited
+     */
+    public static SFBulkhead create(String name, SFWebMethod webMethod, SFConfig config) {
+        int max = webMethod != null ? webMethod.maxConcurrency() : SFWebMethod.defaultMaxConcurrency;
+        long queueTimeout = webMethod != null ? webMethod.queueTimeout() : 0;
+        boolean adaptive = webMethod != null && webMethod.adaptiveConcurrency();
+        int retryAfter = webMethod != null ? webMethod.retryAfter() : SFWebMethod.defaultRetryAfter;
+
+        if (config != null) {
+            max = Integer.parseInt(config.getProperty(name + ".maxConcurrency", String.valueOf(max)).trim());
+            queueTimeout = Long.parseLong(config.getProperty(name + ".queueTimeout", String.valueOf(queueTimeout)).trim());
+            adaptive = Boolean.parseBoolean(config.getProperty(name + ".adaptiveConcurrency", String.valueOf(adaptive)).trim());
+            retryAfter = Integer.parseInt(config.getProperty(name + ".retryAfter", String.valueOf(retryAfter)).trim());
+        }
+        return max > 0 ? new SFBulkhead(max, queueTimeout, adaptive, retryAfter) : null;
+    }
+
+    /**
+     * Try to enter the bulkhead, without waiting
+     *
+     * @return false if the limit was reached
+     */
+    public boolean tryAcquire() {
+        int max = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Enter the bulkhead, waiting up to queueTimeout for an slot
+     *
+     * @return false if the request was rejected, the rejection is counted
+     */
+    public boolean acquire() {
+        if (tryAcquire()) {
+            return true;
+        }
+        if (queueTimeout > 0 && waiting.incrementAndGet() <= getLimit()) {
+            try {
+                if (await(System.nanoTime() + queueTimeout)) {
+                    return true;
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } else if (queueTimeout > 0) {
+            waiting.decrementAndGet();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private boolean await(long deadline) {
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            while (true) {
+                if (tryAcquire()) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || current.isInterrupted()) {
+                    return false;
+                }
+                // also wake up periodically, in case an unpark was missed
+                LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK));
+            }
+        } finally {
+            waiters.remove(current);
+        }
+    }
+
+    /**
+     * Leave the bulkhead, must be called once for each successful acquire
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        Thread next = waiters.peek();
+        if (next != null) {
+            LockSupport.unpark(next);
+        }
+    }
+
+    /**
+     * Leave the bulkhead, and adjust the limit (if adaptive) with the latency
+     * of the request
+     *
+     * @param latency nanoseconds that the request run inside the bulkhead
+     */
+    public void release(long latency) {
+        if (adaptive) {
+            adjust(latency, inFlight.get());
+        }
+        release();
+    }
+
+    /**
+     * Add the latency to the current window, the request that fills the
+     * window adjust the limit
+     *
+     * @param latency
+     * @param running requests running when the request finished
+     */
+    protected void adjust(long latency, int running) {
+        Window current = window.get();
+        int count = current.add(latency, running);
+        if (count >= Math.max(getLimit(), MIN_WINDOW) && window.compareAndSet(current, newWindow())) {
+            adjustWindow(current.percentile(PERCENTILE), current.running.get());
+        }
+    }
+
+    protected Window newWindow() {
+        return new Window(Math.max(maxConcurrency, MIN_WINDOW));
+    }
+
+    /**
+     * Adjust the limit with the latency of an window
+     *
+     * @param latency
+     * @param running max requests running in the window
+     */
+    protected void adjustWindow(long latency, int running) {
+        if (latency <= 0) {
+            return;
+        }
+        long base = updateBaseline(latency);
+        int current = getLimit();
+        if (latency > base * TOLERANCE) {
+            limit.set(Math.max(1, (int) (current * BACKOFF)));
+        } else if (running * 2 >= current) {
+            // only grow when the limit is being used
+            limit.set(Math.min(maxConcurrency, current + 1));
+        }
+    }
+
+    /**
+     * Update the baseline with the latency of an window, the baseline is an
+     * moving average of the previous windows so an window is compared to the
+     * recent latency of the route, not to an old minimum
+     *
+     * @param latency
+     * @return the baseline before this window
+     */
+    protected long updateBaseline(long latency) {
+        long base = baseline.get();
+        if (base < 0) {
+            baseline.set(latency);
+            return latency;
+        }
+        baseline.set(base + (latency - base) / (latency < base ? BASELINE_DOWN : BASELINE_UP));
+        return base;
+    }
+
+    /**
+     * Latencies of the requests of an window, read only by the request that
+     * closed the window
+     */
+    protected static class Window {
+        protected final long[] samples;
+        protected final AtomicInteger count = new AtomicInteger();
+        protected final AtomicInteger running = new AtomicInteger();
+
+        protected Window(int size) {
+            this.samples = new long[size];
+        }
+
+        protected int add(long latency, int inFlight) {
+            int index = count.getAndIncrement();
+            if (index < samples.length) {
+                samples[index] = Math.max(latency, 1);
+            }
+            running.accumulateAndGet(inFlight, Math::max);
+            return index + 1;
+        }
+
+        /**
+         * Get an percentile of the latencies, the samples of the requests
+         * that didn't finish writing are ignored
+         *
+         * @param percentile 0 to 1
+         * @return the latency or 0 if there's no sample
+         */
+        protected long percentile(double percentile) {
+            long[] sorted = Arrays.copyOf(samples, Math.min(count.get(), samples.length));
+            Arrays.sort(sorted);
+            int first = 0;
+            while (first < sorted.length && sorted[first] == 0) {
+                first++;
+            }
+            if (first == sorted.length) {
+                return 0;
+            }
+            return sorted[first + (int) ((sorted.length - first) * percentile)];
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Get the current limit, equal to maxConcurrency if not adaptive
+     *
+     * @return
+     */
+    public int getLimit() {
+        return limit.get();
+    }
+
+    /**
+     * Number of requests running
+     *
+     * @return
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Number of requests waiting for an slot
+     *
+     * @return
+     */
+    public int getWaiting() {
+        return Math.max(waiting.get(), 0);
+    }
+
+    /**
+     * Number of requests rejected
+     *
+     * @return
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getQueueTimeout() {
+        return TimeUnit.NANOSECONDS.toMillis(queueTimeout);
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Seconds sent in the Retry-After header of the rejected requests
+     *
+     * @return
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+}
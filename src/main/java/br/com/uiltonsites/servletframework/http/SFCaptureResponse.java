@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response that keep the body in memory and record the status and headers
+ * (they are also set in the wrapped response), used to store the response
+ * in SFResponseCache.<br><br>
+ *
+ * The CORS headers are not recorded, they depend on the request.
+ *
+ */
+public class SFCaptureResponse extends HttpServletResponseWrapper {
+
+    protected final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    protected final List<String[]> headers = new ArrayList<>();
+    protected ServletOutputStream stream;
+    protected PrintWriter writer;
+    protected int status = SC_OK;
+    protected boolean cacheable = true;
+    protected boolean bypassed;
+
+    public SFCaptureResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    protected void record(String name, String value, boolean add) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        if (lower.startsWith("access-control-") || (lower.equals("vary") && SFCorsPolicy.ORIGIN.equalsIgnoreCase(value))) {
+            return;
+        }
+        if (lower.equals("set-cookie")) {
+            cacheable = false;
+        }
+        if (!add) {
+            Iterator<String[]> it = headers.iterator();
+            while (it.hasNext()) {
+                if (it.next()[0].equalsIgnoreCase(name)) {
+                    it.remove();
+                }
+            }
+        }
+        headers.add(new String[]{name, value});
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        super.setHeader(name, value);
+        record(name, value, false);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        super.addHeader(name, value);
+        record(name, value, true);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        super.setIntHeader(name, value);
+        record(name, String.valueOf(value), false);
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        super.addIntHeader(name, value);
+        record(name, String.valueOf(value), true);
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        super.setDateHeader(name, date);
+        // the value is set again by the wrapped response
+        record(name, super.getHeader(name), false);
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        super.addDateHeader(name, date);
+        cacheable = false;
+    }
+
+    @Override
+    public void setContentType(String type) {
+        super.setContentType(type);
+        record("Content-Type", type, false);
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        super.setStatus(sc);
+        this.status = sc;
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        cacheable = false;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        cacheable = false;
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        cacheable = false;
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        cacheable = false;
+        super.addCookie(cookie);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (stream == null) {
+            stream = new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    body.write(b, off, len);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                    throw new IllegalStateException("Non-blocking output is not supported on routes with SFCacheable or SFConditional");
+                }
+            };
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (stream != null) {
+            throw new IllegalStateException("getOutputStream() has already been called for this response");
+        }
+        if (writer == null) {
+            String charset = getCharacterEncoding();
+            writer = new PrintWriter(new OutputStreamWriter(body, charset != null ? charset : "ISO-8859-1"));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        resetBuffer();
+        headers.clear();
+        status = SC_OK;
+    }
+
+    @Override
+    public void resetBuffer() {
+        flushBuffer();
+        body.reset();
+    }
+
+    /**
+     * Stop the capture: the body will be written directly in the wrapped
+     * response (ex: an SFFileResponse) and nothing is cached
+     *
+     * @return the wrapped response
+     */
+    public HttpServletResponse bypass() {
+        bypassed = true;
+        cacheable = false;
+        return (HttpServletResponse) getResponse();
+    }
+
+    /**
+     * Return true if the body was written directly in the wrapped response
+     *
+     * @return
+     */
+    public boolean isBypassed() {
+        return bypassed;
+    }
+
+    /**
+     * Get the body written until now
+     *
+     * @return
+     */
+    public byte[] getBody() {
+        flushBuffer();
+        return body.toByteArray();
+    }
+
+    /**
+     * Get the headers set, each one as {name, value}
+     *
+     * @return
+     */
+    public List<String[]> getRecordedHeaders() {
+        return headers;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Return true if the response can be stored in cache (status 200 and
+     * without cookies)
+     *
+     * @return
+     */
+    public boolean isCacheable() {
+        return cacheable && status == SC_OK;
+    }
+
+}
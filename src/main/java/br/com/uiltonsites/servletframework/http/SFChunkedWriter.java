@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.exceptions.SFClientAbortException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Writer used by the streaming responses, flush the response each chunkSize
+ * chars (the container send it with chunked transfer encoding) and throw an
+ * SFClientAbortException when the client is gone, so the producer can stop
+ * early.
+ *
+ */
+public class SFChunkedWriter extends Writer {
+
+    protected final PrintWriter out;
+    protected final int chunkSize;
+    protected int pending;
+
+    public SFChunkedWriter(PrintWriter out, int chunkSize) {
+        super(out);
+        this.out = out;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        written(1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+        written(len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        out.write(str, off, len);
+        written(len);
+    }
+
+    protected void written(int len) throws IOException {
+        pending += len;
+        if (pending >= chunkSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the pending chars to the client
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        pending = 0;
+        // checkError flush the writer, PrintWriter don't throw IOException
+        if (out.checkError()) {
+            throw new SFClientAbortException("Client disconnected");
+        }
+    }
+
+    /**
+     * Flush, the response writer is closed by the servlet
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFCompression;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compression settings of an route, built from SFCompression when the route
+ * table is built
+ *
+ */
+public class SFCompressionPolicy {
+
+    /**
+     * Policy of the routes without SFCompression
+     */
+    public static final SFCompressionPolicy DEFAULT = newDefault();
+
+    protected final boolean enabled;
+    protected final int minSize;
+    protected final Set<String> types = new HashSet<>();
+    protected final List<String> typePrefixes = new ArrayList<>();
+    protected final int level;
+
+    public SFCompressionPolicy(SFCompression compression) {
+        this(compression.enabled(), compression.minSize(), compression.contentTypes(), compression.level());
+    }
+
+    /**
+     * @param enabled
+     * @param minSize
+     * @param contentTypes ex: application/json, text/*
+     * @param level 0-9 or -1 for the default
+     */
+    public SFCompressionPolicy(boolean enabled, int minSize, String[] contentTypes, int level) {
+        this.enabled = enabled;
+        this.minSize = Math.max(minSize, 0);
+        this.level = level;
+        for (String type : contentTypes) {
+            String media = SFSerializers.getMediaType(type);
+            if (media.endsWith("/*")) {
+                typePrefixes.add(media.substring(0, media.length() - 1));
+            } else {
+                types.add(media);
+            }
+        }
+    }
+
+    // holder of the default values of the annotation
+    @SFCompression
+    private static final class Defaults {
+    }
+
+    private static SFCompressionPolicy newDefault() {
+        return new SFCompressionPolicy(Defaults.class.getAnnotation(SFCompression.class));
+    }
+
+    /**
+     * Get the policy of an method
+     *
+     * @param methodCompression the annotation of the method, can be null
+     * @param classPolicy the policy of the servlet
+     * @return
+     */
+    public static SFCompressionPolicy resolve(SFCompression methodCompression, SFCompressionPolicy classPolicy) {
+        return methodCompression != null ? new SFCompressionPolicy(methodCompression) : classPolicy;
+    }
+
+    /**
+     * Return true if responses of this content type can be compressed
+     *
+     * @param contentType
+     * @return
+     */
+    public boolean isCompressible(String contentType) {
+        if (!enabled || contentType == null) {
+            return false;
+        }
+        String media = SFSerializers.getMediaType(contentType);
+        if (types.contains(media)) {
+            return true;
+        }
+        for (String prefix : typePrefixes) {
+            if (media.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+}
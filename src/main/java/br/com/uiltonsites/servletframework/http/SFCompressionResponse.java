@@ -0,0 +1,469 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFDeflaterPool;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response that compress the body with gzip or deflate, negotiated by the
+ * Accept-Encoding of the request.<br><br>
+ *
+ * The first minSize bytes are kept in memory, the compression is only
+ * decided when they are exceeded or when the body is closed, based on the
+ * content type and status of the response and on the SFCompressionPolicy of
+ * the route. An flush before that (streamed bodies) decide without minSize,
+ * since the size of the body is unknown. The Deflaters come from an
+ * SFDeflaterPool and are returned by finish().
+ *
+ */
+public class SFCompressionResponse extends HttpServletResponseWrapper {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    protected final String encoding;
+    protected SFCompressionPolicy policy;
+    protected CompressionStream stream;
+    protected PrintWriter writer;
+    protected long contentLength = -1;
+    protected boolean complete;
+
+    /**
+     * @param response
+     * @param encoding gzip or deflate
+     * @param policy
+     */
+    public SFCompressionResponse(HttpServletResponse response, String encoding, SFCompressionPolicy policy) {
+        super(response);
+        this.encoding = encoding;
+        this.policy = policy;
+    }
+
+    /**
+     * Choose the encoding of the response
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request
+     * @return gzip, deflate or null if the client don't accept any of them
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            int semi = part.indexOf(';');
+            String coding = (semi >= 0 ? part.substring(0, semi) : part).trim().toLowerCase(Locale.ENGLISH);
+            float q = 1;
+            if (semi >= 0) {
+                String param = part.substring(semi + 1).trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(param.substring(2).trim());
+                    } catch (NumberFormatException ex) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * Change the policy, must be called before the body is written
+     *
+     * @param policy
+     */
+    public void setPolicy(SFCompressionPolicy policy) {
+        this.policy = policy;
+    }
+
+    public SFCompressionPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (stream == null) {
+            stream = new CompressionStream();
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            stream = new CompressionStream();
+            String charset = getCharacterEncoding();
+            writer = new PrintWriter(new OutputStreamWriter(stream, charset != null ? charset : "ISO-8859-1"));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        // only known after the compression is decided
+        if (stream != null && stream.committed && !stream.compressed) {
+            super.setContentLengthLong(len);
+        } else {
+            contentLength = len;
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (name.equalsIgnoreCase("Content-Length")) {
+            setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (name.equalsIgnoreCase("Content-Length")) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        resetBuffer();
+        contentLength = -1;
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (stream != null && stream.committed) {
+            throw new IllegalStateException("Response already committed");
+        }
+        super.resetBuffer();
+        if (stream != null) {
+            stream.count = 0;
+        }
+    }
+
+    /**
+     * Mark the body as complete, after that the flushes don't decide the
+     * compression, so small bodies still get Content-Length
+     */
+    public void markComplete() {
+        this.complete = true;
+    }
+
+    /**
+     * Write the rest of the body, the end of the compressed data and return
+     * the Deflater to the pool. Must be called when the response is complete.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        markComplete();
+        if (writer != null) {
+            writer.close();
+        }
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Return true if the body is (or will be) compressed
+     *
+     * @return
+     */
+    public boolean isCompressed() {
+        return stream != null && stream.compressed;
+    }
+
+    /**
+     * Decide if the body will be compressed
+     *
+     * @param size bytes already written, or the total if the body is complete
+     * @return
+     */
+    protected boolean shouldCompress(long size) {
+        return size > 0 && size >= (policy == null ? 0 : policy.getMinSize()) && shouldCompress();
+    }
+
+    /**
+     * Decide if the body will be compressed, without checking its size (the
+     * body was flushed before minSize)
+     *
+     * @return
+     */
+    protected boolean shouldCompress() {
+        int status = getStatus();
+        if (policy == null || !policy.isCompressible(getContentType())) {
+            return false;
+        }
+        if (status < 200 || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED || status == SC_PARTIAL_CONTENT) {
+            return false;
+        }
+        return getHeader("Content-Encoding") == null;
+    }
+
+    protected class CompressionStream extends ServletOutputStream {
+
+        protected byte[] buffer;
+        protected int count;
+        protected boolean committed;
+        protected boolean compressed;
+        protected boolean closed;
+        protected ServletOutputStream out;
+        protected Deflater deflater;
+        protected SFDeflaterPool pool;
+        protected CRC32 crc;
+        protected byte[] deflateBuffer;
+
+        /**
+         * Decide the compression and write the buffered bytes
+         *
+         * @param size bytes written until now
+         * @param complete true if the body is complete
+         * @throws IOException
+         */
+        protected void commit(long size, boolean complete) throws IOException {
+            commit(shouldCompress(size), complete);
+        }
+
+        /**
+         * Write the buffered bytes
+         *
+         * @param compress true to compress the body
+         * @param complete true if the body is complete
+         * @throws IOException
+         */
+        protected void commit(boolean compress, boolean complete) throws IOException {
+            committed = true;
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            if (policy != null && policy.isCompressible(getContentType())) {
+                response.addHeader("Vary", "Accept-Encoding");
+            }
+            out = response.getOutputStream();
+
+            if (compress) {
+                compressed = true;
+                response.setHeader("Content-Encoding", encoding);
+                boolean gzip = GZIP.equals(encoding);
+                pool = SFDeflaterPool.get(policy.getLevel(), gzip);
+                deflater = pool.acquire();
+                deflateBuffer = new byte[8192];
+                if (gzip) {
+                    crc = new CRC32();
+                    out.write(new byte[]{0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+                }
+            } else if (complete) {
+                response.setContentLength(count);
+            } else if (contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+
+            if (count > 0) {
+                writeBody(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        protected void writeBody(byte[] b, int off, int len) throws IOException {
+            if (!compressed) {
+                out.write(b, off, len);
+                return;
+            }
+            if (crc != null) {
+                crc.update(b, off, len);
+            }
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        protected void deflate(int flush) throws IOException {
+            int n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, flush);
+            if (n > 0) {
+                out.write(deflateBuffer, 0, n);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (committed) {
+                writeBody(b, off, len);
+                return;
+            }
+            int minSize = policy == null ? 0 : policy.getMinSize();
+            if (count + len <= minSize) {
+                if (buffer == null) {
+                    buffer = new byte[minSize];
+                }
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+                return;
+            }
+            // the body is bigger than minSize
+            commit(count + len, false);
+            writeBody(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (!committed) {
+                if (complete) {
+                    return;
+                }
+                // the body is streamed, its size is unknown
+                commit(shouldCompress(), false);
+            }
+            if (compressed) {
+                int n;
+                do {
+                    n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+                    if (n > 0) {
+                        out.write(deflateBuffer, 0, n);
+                    }
+                } while (n == deflateBuffer.length);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!committed) {
+                    commit(count, true);
+                }
+                if (compressed) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflate(Deflater.NO_FLUSH);
+                    }
+                    if (crc != null) {
+                        writeInt((int) crc.getValue());
+                        writeInt((int) deflater.getBytesRead());
+                    }
+                }
+                out.close();
+            } finally {
+                if (deflater != null) {
+                    pool.release(deflater);
+                    deflater = null;
+                }
+            }
+        }
+
+        private void writeInt(int v) throws IOException {
+            out.write(new byte[]{(byte) v, (byte) (v >> 8), (byte) (v >> 16), (byte) (v >> 24)});
+        }
+
+        @Override
+        public boolean isReady() {
+            // the writes are only buffered before the commit
+            return !committed || compressed || out.isReady();
+        }
+
+        /**
+         * Non-blocking output is written straight to the response, the body
+         * is not compressed
+         *
+         * @param writeListener
+         */
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (!committed) {
+                try {
+                    commit(false, false);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Failed to write the buffered body", ex);
+                }
+            }
+            if (compressed) {
+                throw new IllegalStateException("The compressed body was already written, non-blocking output must be started before writing");
+            }
+            out.setWriteListener(writeListener);
+        }
+    }
+
+}
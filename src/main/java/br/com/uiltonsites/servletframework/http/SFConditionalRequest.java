@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFHash;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Validation of the conditional requests (If-None-Match, If-Modified-Since)
+ * against the ETag and Last-Modified of the response
+ *
+ */
+public final class SFConditionalRequest {
+
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private SFConditionalRequest() {
+    }
+
+    /**
+     * Build an strong ETag with the hash of the body
+     *
+     * @param body
+     * @param off
+     * @param len
+     * @return
+     */
+    public static String hashETag(byte[] body, int off, int len) {
+        String hex = Long.toHexString(SFHash.xxh64(body, off, len, 0));
+        StringBuilder sb = new StringBuilder(18).append('"');
+        for (int i = hex.length(); i < 16; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).append('"').toString();
+    }
+
+    /**
+     * Build an ETag with an version, the value is quoted if it is not
+     *
+     * @param version
+     * @return
+     */
+    public static String formatETag(String version) {
+        if (version.startsWith("\"") || version.startsWith("W/\"")) {
+            return version;
+        }
+        return '"' + version.replace("\"", "") + '"';
+    }
+
+    /**
+     * Return true if any ETag of an If-None-Match header is equal to the
+     * ETag, using the weak comparison
+     *
+     * @param ifNoneMatch
+     * @param etag
+     * @return
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        String tag = opaque(etag);
+        int len = ifNoneMatch.length();
+        int i = 0;
+        while (i < len) {
+            int comma = ifNoneMatch.indexOf(',', i);
+            if (comma < 0) {
+                comma = len;
+            }
+            String candidate = ifNoneMatch.substring(i, comma).trim();
+            if (candidate.equals("*") || opaque(candidate).equals(tag)) {
+                return true;
+            }
+            i = comma + 1;
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Return true if the client already have the response, based on the ETag
+     * and Last-Modified headers already set in the response. The
+     * If-Modified-Since is ignored when the request have If-None-Match.
+     *
+     * @param request
+     * @param response
+     * @return
+     */
+    public static boolean isNotModified(HttpServletRequest request, HttpServletResponse response) {
+        return isNotModified(request, response.getHeader(ETAG), parseDate(response.getHeader(LAST_MODIFIED)));
+    }
+
+    /**
+     * Return true if the client already have the response
+     *
+     * @param request
+     * @param etag can be null
+     * @param lastModified milliseconds, -1 if unknown
+     * @return
+     */
+    public static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etag != null && matches(ifNoneMatch, etag);
+        }
+        if (lastModified < 0) {
+            return false;
+        }
+        long since = parseDate(request.getHeader(IF_MODIFIED_SINCE));
+        // http dates don't have milliseconds
+        return since >= 0 && lastModified / 1000 <= since / 1000;
+    }
+
+    /**
+     * Parse an http date (RFC 1123)
+     *
+     * @param value
+     * @return the milliseconds or -1 if null or invalid
+     */
+    public static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFAllowCORS;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * CORS policy of an route, built from SFAllowCORS when the route table is
+ * built, with the values of the headers already joined
+ *
+ */
+public class SFCorsPolicy {
+
+    public static final String ORIGIN = "Origin";
+    public static final String REQUEST_METHOD = "Access-Control-Request-Method";
+    public static final String REQUEST_HEADERS = "Access-Control-Request-Headers";
+    public static final String ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+    public static final String ALLOW_METHODS = "Access-Control-Allow-Methods";
+    public static final String ALLOW_HEADERS = "Access-Control-Allow-Headers";
+    public static final String ALLOW_CREDENTIALS = "Access-Control-Allow-Credentials";
+    public static final String EXPOSE_HEADERS = "Access-Control-Expose-Headers";
+    public static final String MAX_AGE = "Access-Control-Max-Age";
+
+    protected static final String DEFAULT_METHODS = "OPTIONS, GET, POST, DELETE, PUT";
+
+    /**
+     * Policy of an SFAllowCORS without attributes
+     */
+    public static final SFCorsPolicy DEFAULT = new SFCorsPolicy(new String[]{SFAllowCORS.ANY}, new String[0], new String[0], new String[0], SFAllowCORS.defaultMaxAge, false);
+
+    protected final boolean anyOrigin;
+    protected final Set<String> origins;
+    protected final String allowMethods;
+    protected final String allowHeaders;
+    protected final String exposeHeaders;
+    protected final String maxAge;
+    protected final boolean allowCredentials;
+
+    public SFCorsPolicy(SFAllowCORS cors) {
+        this(cors.origins(), cors.methods(), cors.headers(), cors.exposedHeaders(), cors.maxAge(), cors.allowCredentials());
+    }
+
+    /**
+     * @param origins
+     * @param methods empty for OPTIONS, GET, POST, DELETE, PUT
+     * @param headers empty to allow the headers requested by the browser
+     * @param exposedHeaders
+     * @param maxAge seconds, -1 to not send
+     * @param allowCredentials can't be used with "*" in origins
+     * @throws IllegalArgumentException if allowCredentials is true and
+     * origins contains "*"
+     */
+    public SFCorsPolicy(String[] origins, String[] methods, String[] headers, String[] exposedHeaders, long maxAge, boolean allowCredentials) {
+        this.origins = new HashSet<>(Arrays.asList(origins));
+        this.anyOrigin = this.origins.contains(SFAllowCORS.ANY);
+        if (anyOrigin && allowCredentials) {
+            throw new IllegalArgumentException("SFAllowCORS allowCredentials requires an explicit list of origins, \"" + SFAllowCORS.ANY + "\" would let any site make credentialed requests");
+        }
+        this.allowMethods = methods.length == 0 ? DEFAULT_METHODS : String.join(", ", methods);
+        this.allowHeaders = headers.length == 0 ? null : String.join(", ", headers);
+        this.exposeHeaders = exposedHeaders.length == 0 ? null : String.join(", ", exposedHeaders);
+        this.maxAge = maxAge < 0 ? null : String.valueOf(maxAge);
+        this.allowCredentials = allowCredentials;
+    }
+
+    /**
+     * Get the policy of an method
+     *
+     * @param methodCors the annotation of the method, can be null
+     * @param classPolicy the policy of the servlet, can be null
+     * @return the policy or null if CORS is not allowed
+     */
+    public static SFCorsPolicy resolve(SFAllowCORS methodCors, SFCorsPolicy classPolicy) {
+        return methodCors != null ? new SFCorsPolicy(methodCors) : classPolicy;
+    }
+
+    /**
+     * Get the value of Access-Control-Allow-Origin for the request
+     *
+     * @param request
+     * @return the value or null if the origin is not allowed
+     */
+    protected String allowOrigin(HttpServletRequest request) {
+        if (anyOrigin) {
+            return SFAllowCORS.ANY;
+        }
+        String origin = request.getHeader(ORIGIN);
+        if (origin != null && origins.contains(origin)) {
+            return origin;
+        }
+        return null;
+    }
+
+    /**
+     * Set the CORS headers of an response to an normal request
+     *
+     * @param request
+     * @param response
+     * @return false if the origin is not allowed
+     */
+    public boolean apply(HttpServletRequest request, HttpServletResponse response) {
+        String origin = allowOrigin(request);
+        if (origin == null) {
+            return false;
+        }
+        setOrigin(response, origin);
+        if (exposeHeaders != null) {
+            response.setHeader(EXPOSE_HEADERS, exposeHeaders);
+        }
+        return true;
+    }
+
+    /**
+     * Set the CORS headers of an response to an preflight request
+     *
+     * @param request
+     * @param response
+     * @return false if the origin is not allowed
+     */
+    public boolean applyPreflight(HttpServletRequest request, HttpServletResponse response) {
+        String origin = allowOrigin(request);
+        if (origin == null) {
+            return false;
+        }
+        setOrigin(response, origin);
+        response.setHeader(ALLOW_METHODS, allowMethods);
+        String headers = allowHeaders != null ? allowHeaders : request.getHeader(REQUEST_HEADERS);
+        if (headers != null) {
+            response.setHeader(ALLOW_HEADERS, headers);
+        }
+        if (maxAge != null) {
+            response.setHeader(MAX_AGE, maxAge);
+        }
+        return true;
+    }
+
+    private void setOrigin(HttpServletResponse response, String origin) {
+        response.setHeader(ALLOW_ORIGIN, origin);
+        if (!SFAllowCORS.ANY.equals(origin)) {
+            response.addHeader("Vary", ORIGIN);
+        }
+        if (allowCredentials) {
+            response.setHeader(ALLOW_CREDENTIALS, "true");
+        }
+    }
+
+    /**
+     * Return true if the request is an CORS preflight
+     *
+     * @param request
+     * @return
+     */
+    public static boolean isPreflight(HttpServletRequest request) {
+        return SFHttpServlet.METHOD_OPTIONS.equals(request.getMethod()) && request.getHeader(ORIGIN) != null && request.getHeader(REQUEST_METHOD) != null;
+    }
+
+    public String getAllowMethods() {
+        return allowMethods;
+    }
+
+    public String getMaxAge() {
+        return maxAge;
+    }
+
+    public boolean isAllowCredentials() {
+        return allowCredentials;
+    }
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.exceptions.SFClientAbortException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Return of an SFWebMethod that send an file. The file is copied to the
+ * response with FileChannel.transferTo (sendfile or memory-mapped chunks,
+ * decided by the JVM), or by the container itself when it support the
+ * sendfile attributes of Tomcat, so the content never pass by the heap.<br><br>
+ *
+ * Support Range requests (only one range, multiple ranges are answered with
+ * the whole file), If-Range and the validation by ETag and Last-Modified,
+ * both taken from the attributes of the file. The response is never
+ * compressed, the ranges refer to the bytes of the file.
+ *
+ */
+public class SFFileResponse {
+
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String RANGE = "Range";
+    public static final String IF_RANGE = "If-Range";
+    public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    protected static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    protected static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    protected static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    protected static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    protected final Path path;
+    protected String contentType;
+    protected String fileName;
+    protected boolean attachment;
+    protected boolean deleteOnComplete;
+
+    public SFFileResponse(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @param path
+     * @param contentType null to guess by the name of the file
+     */
+    public SFFileResponse(Path path, String contentType) {
+        this.path = path;
+        this.contentType = contentType;
+    }
+
+    public SFFileResponse(File file) {
+        this(file.toPath());
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @param contentType null to guess by the name of the file
+     */
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Set the name sent in the Content-Disposition header
+     *
+     * @param fileName
+     */
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public boolean isAttachment() {
+        return attachment;
+    }
+
+    /**
+     * Ask the browser to download the file instead of showing it
+     *
+     * @param attachment
+     */
+    public void setAttachment(boolean attachment) {
+        this.attachment = attachment;
+    }
+
+    public boolean isDeleteOnComplete() {
+        return deleteOnComplete;
+    }
+
+    /**
+     * Delete the file after it is sent (ex: an generated report)
+     *
+     * @param deleteOnComplete
+     */
+    public void setDeleteOnComplete(boolean deleteOnComplete) {
+        this.deleteOnComplete = deleteOnComplete;
+    }
+
+    /**
+     * Build an strong ETag with the size and the last modified time of the
+     * file
+     *
+     * @param size
+     * @param lastModified
+     * @return
+     */
+    public static String fileETag(long size, long lastModified) {
+        return '"' + Long.toHexString(size) + '-' + Long.toHexString(lastModified) + '"';
+    }
+
+    /**
+     * Send the file, the response must not have anything written
+     *
+     * @param request
+     * @param response
+     * @throws IOException java.nio.file.NoSuchFileException if the file don't
+     * exist, SFClientAbortException if the client disconnected
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            String etag = fileETag(size, lastModified);
+
+            response.setHeader(SFConditionalRequest.ETAG, etag);
+            response.setDateHeader(SFConditionalRequest.LAST_MODIFIED, lastModified);
+            response.setHeader(ACCEPT_RANGES, "bytes");
+            response.setContentType(resolveContentType());
+            if (fileName != null || attachment) {
+                String name = (fileName != null ? fileName : path.getFileName().toString()).replace("\"", "");
+                response.setHeader("Content-Disposition", (attachment ? "attachment" : "inline") + "; filename=\"" + name + '"');
+            }
+
+            if (SFConditionalRequest.isNotModified(request, etag, lastModified)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            long start = 0;
+            long end = size;
+            long[] range = getRange(request, etag, lastModified, size);
+            if (range == UNSATISFIABLE) {
+                response.setHeader(CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setContentLength(0);
+                return;
+            } else if (range != null) {
+                start = range[0];
+                end = range[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+            }
+            response.setContentLengthLong(end - start);
+
+            if ("HEAD".equals(request.getMethod()) || end == start) {
+                return;
+            }
+
+            if (!deleteOnComplete && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // the container send the file after the servlet return
+                request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end);
+                return;
+            }
+
+            transfer(channel, start, end, response.getOutputStream());
+        }
+    }
+
+    /**
+     * Copy the bytes between start and end of the file to the response, only
+     * the failures to write to the response are thrown as
+     * SFClientAbortException, the failures to read the file are thrown as is
+     *
+     * @param channel
+     * @param start
+     * @param end exclusive
+     * @param out
+     * @throws IOException
+     */
+    protected void transfer(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        ResponseChannel response = out instanceof WritableByteChannel ? null : new ResponseChannel(Channels.newChannel(out));
+        WritableByteChannel target = response != null ? response : (WritableByteChannel) out;
+        long position = start;
+        while (position < end) {
+            long n;
+            try {
+                n = channel.transferTo(position, end - position, target);
+            } catch (IOException ex) {
+                if (isWriteFailure(ex, response, channel, end)) {
+                    throw new SFClientAbortException("Client disconnected: " + ex.getMessage(), ex);
+                }
+                throw ex;
+            }
+            if (n <= 0) {
+                throw new IOException("File truncated while sending: " + path);
+            }
+            position += n;
+        }
+        out.flush();
+    }
+
+    /**
+     * Return true if an exception of transferTo was thrown by the write to
+     * the response
+     *
+     * @param ex
+     * @param response the wrapper of the response, null if the output stream
+     * is an channel (then the file is checked instead)
+     * @param channel
+     * @param end
+     * @return
+     */
+    protected boolean isWriteFailure(IOException ex, ResponseChannel response, FileChannel channel, long end) {
+        if (response != null) {
+            return response.failure == ex;
+        }
+        try {
+            return channel.isOpen() && channel.size() >= end;
+        } catch (IOException sizeFailure) {
+            return false;
+        }
+    }
+
+    /**
+     * Channel of the response that keep the exception of the last failed
+     * write
+     */
+    protected static class ResponseChannel implements WritableByteChannel {
+
+        protected final WritableByteChannel target;
+        protected IOException failure;
+
+        protected ResponseChannel(WritableByteChannel target) {
+            this.target = target;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            try {
+                return target.write(src);
+            } catch (IOException ex) {
+                failure = ex;
+                throw ex;
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return target.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+
+    protected String resolveContentType() throws IOException {
+        if (contentType != null) {
+            return contentType;
+        }
+        String probed = Files.probeContentType(path);
+        return probed != null ? probed : DEFAULT_CONTENT_TYPE;
+    }
+
+    protected static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Parse the Range header, only one range of bytes is supported
+     *
+     * @param request
+     * @param etag
+     * @param lastModified
+     * @param size
+     * @return start and end (exclusive), null to send the whole file or
+     * UNSATISFIABLE
+     */
+    protected static long[] getRange(HttpServletRequest request, String etag, long lastModified, long size) {
+        String header = request.getHeader(RANGE);
+        if (header == null || !"GET".equals(request.getMethod()) || !header.startsWith("bytes=")) {
+            return null;
+        }
+
+        // the range is only valid if the client have the same version
+        String ifRange = request.getHeader(IF_RANGE);
+        if (ifRange != null) {
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(etag)) {
+                    return null;
+                }
+            } else {
+                long date = SFConditionalRequest.parseDate(ifRange);
+                if (date < 0 || date / 1000 != lastModified / 1000) {
+                    return null;
+                }
+            }
+        }
+
+        String spec = header.substring(6).trim();
+        if (spec.indexOf(',') >= 0) {
+            return null;
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        long start;
+        long end;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix: the last n bytes
+                long n = Long.parseLong(last);
+                if (n <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(size - n, 0);
+                end = size;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size : Math.min(Long.parseLong(last) + 1, size);
+                if (end <= start && !last.isEmpty() && start < size) {
+                    // last before first is an invalid header
+                    return null;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+
+        if (start < 0 || start >= size) {
+            return UNSATISFIABLE;
+        }
+        return new long[]{start, end};
+    }
+
+}
@@ -20,7 +20,7 @@ package br.com.uiltonsites.servletframework.http;
 
 import br.com.uiltonsites.servletframework.utility.SFJsonHandler;
 import br.com.uiltonsites.servletframework.utility.SFXmlHandler;
-import com.google.gson.Gson;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
 
 /**
  * Return the text response from the http request
@@ -36,7 +36,7 @@ public class SFHttpResult {
     public String reasonPhrase = "Unknow errror";
 
     public <T> T parseJson(Class<T> clazz) {
-        return new Gson().fromJson(output, clazz);
+        return SFSerializers.getGson().fromJson(output, clazz);
     }
 
     public SFJsonHandler parseJson() {
@@ -18,24 +18,50 @@
  */
 package br.com.uiltonsites.servletframework.http;
 
-import br.com.uiltonsites.servletframework.interfaces.SFAllowCORS;
+import br.com.uiltonsites.servletframework.utility.SFConfig;
 import br.com.uiltonsites.servletframework.utility.SFLogger;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
+import br.com.uiltonsites.servletframework.utility.SFVirtualThreads;
+import br.com.uiltonsites.servletframework.utility.SFDeadline;
+import br.com.uiltonsites.servletframework.utility.SFThreadSlots;
+import br.com.uiltonsites.servletframework.interfaces.SFInstanceScope;
+import br.com.uiltonsites.servletframework.interfaces.SFSerializer;
+import br.com.uiltonsites.servletframework.interfaces.SFStreamingBody;
 import br.com.uiltonsites.servletframework.interfaces.SFWebMethod;
-import br.com.uiltonsites.servletframework.utility.SFMsisdn;
+import br.com.uiltonsites.servletframework.utility.exceptions.SFClientAbortException;
 import br.com.uiltonsites.servletframework.utility.exceptions.SFParseParameterException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.BaseStream;
 import javax.faces.bean.ApplicationScoped;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 /**
@@ -59,11 +85,21 @@ public abstract class SFHttpServlet extends HttpServlet {
     public final static String CONTENT_TYPE_APPLICATION_JSONP = "application/javascript";
     public final static String CONTENT_TYPE_TEXT_HTML = "text/html";
     public final static String CONTENT_TYPE_TEXT_PLAIN = "text/plain";
+    /** milliseconds the client will wait for the response */
+    public final static String HEADER_REQUEST_TIMEOUT = "X-Request-Timeout";
     protected String requestEncoding = "UTF-8";
     protected String responseEncoding = "UTF-8";
+    protected long asyncTimeout = 30000;
+    protected int streamChunkSize = 8192;
+    protected long requestTimeout = 0;
+    protected boolean recycleContext = false;
 
     protected SFLogger logger;
 
+    private volatile SFRouteTable routeTable;
+    private volatile SFInstanceProvider instanceProvider;
+    private final SFThreadSlots<SFRequestContext> requestContext = new SFThreadSlots<>();
+
     public SFHttpServlet(SFLogger logger) {
         this.logger = logger;
     }
@@ -88,6 +124,157 @@ public abstract class SFHttpServlet extends HttpServlet {
         this.responseEncoding = responseEncoding;
     }
 
+    /**
+     * Get the default timeout in ms of the methods that return an
+     * CompletionStage, 0 or less means no timeout
+     *
+     * @return
+     */
+    public long getAsyncTimeout() {
+        return asyncTimeout;
+    }
+
+    protected void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * Get the number of chars written by an streaming response before it is
+     * flushed to the client
+     *
+     * @return
+     */
+    public int getStreamChunkSize() {
+        return streamChunkSize;
+    }
+
+    protected void setStreamChunkSize(int streamChunkSize) {
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    /**
+     * Get the default time budget in ms of the requests, 0 or less means no
+     * deadline (unless the client send the header X-Request-Timeout)
+     *
+     * @return
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    protected void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Return true if the container, the url segments and the logger are
+     * reused by the next request of the same thread (see SFRequestContext).
+     * The methods must not keep the SFServletContainer after they return,
+     * unless the request is async.
+     *
+     * @return
+     */
+    public boolean isRecycleContext() {
+        return recycleContext;
+    }
+
+    protected void setRecycleContext(boolean recycleContext) {
+        this.recycleContext = recycleContext;
+    }
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        routeTable = newRouteTable();
+        instanceProvider = newInstanceProvider();
+    }
+
+    @Override
+    public void destroy() {
+        SFInstanceProvider provider = instanceProvider;
+        if (provider != null) {
+            provider.destroy();
+        }
+        requestContext.clear();
+        super.destroy();
+    }
+
+    /**
+     * Create the route table of this servlet, override to customize how the
+     * routes are resolved
+     *
+     * @return
+     */
+    protected SFRouteTable newRouteTable() {
+        return new SFRouteTable(this.getClass(), getAdmissionConfig());
+    }
+
+    /**
+     * Get the config with the concurrency limits of the routes, that replace
+     * the attributes of SFWebMethod
+     * (ex: com.example.MyServlet.list.maxConcurrency=20, see SFBulkhead.create)
+     *
+     * @return the config or null to use only the annotations
+     */
+    protected SFConfig getAdmissionConfig() {
+        return null;
+    }
+
+    /**
+     * Get the route table built in init(), the table is built here in case
+     * init() was overridden without calling super.init()
+     *
+     * @return
+     */
+    protected SFRouteTable getRouteTable() {
+        SFRouteTable table = routeTable;
+        if (table == null) {
+            table = newRouteTable();
+            routeTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Create the strategy used to get the instance that will receive the
+     * calls, based on the annotations ApplicationScoped and SFInstanceScope
+     *
+     * @return
+     */
+    protected SFInstanceProvider newInstanceProvider() {
+        Class<?> clazz = this.getClass();
+        if (clazz.getAnnotation(ApplicationScoped.class) != null) {
+            return new SFInstanceProvider.Singleton(this);
+        }
+
+        SFInstanceScope scope = clazz.getAnnotation(SFInstanceScope.class);
+        if (scope == null) {
+            return new SFInstanceProvider.PerRequest(clazz);
+        }
+        switch (scope.value()) {
+            case SINGLETON:
+                return new SFInstanceProvider.Singleton(this);
+            case THREAD:
+                return new SFInstanceProvider.PerThread(new SFInstanceProvider.PerRequest(clazz));
+            default:
+                return new SFInstanceProvider.PerRequest(clazz);
+        }
+    }
+
+    /**
+     * Get the instance strategy created in init()
+     *
+     * @return
+     */
+    protected SFInstanceProvider getInstanceProvider() {
+        SFInstanceProvider provider = instanceProvider;
+        if (provider == null) {
+            provider = newInstanceProvider();
+            instanceProvider = provider;
+        }
+        return provider;
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
@@ -117,17 +304,75 @@ public abstract class SFHttpServlet extends HttpServlet {
 
     @Override
     protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        // preflights are answered from the route table
+        if (SFCorsPolicy.isPreflight(req)) {
+            processOptionsRequest(req, resp, getLogger());
+            return;
+        }
+
         super.doOptions(req, resp);
 
-        checkAllowCors(req, resp, null);
+        checkAllowCors(req, resp, (SFRoute) null);
     }
 
     protected SFLogger getLogger() {
+        if (isRecycleContext()) {
+            SFRequestContext context = getRequestContext();
+            if (!context.isInUse()) {
+                return context.getLogger();
+            }
+        }
         SFLogger thisLogger;
         thisLogger = SFLogger.getLogger(this.getClass());
         return thisLogger;
     }
 
+    /**
+     * Get the context of the current thread, created on the first use
+     *
+     * @return
+     */
+    protected SFRequestContext getRequestContext() {
+        SFRequestContext context = requestContext.get();
+        if (context == null) {
+            context = new SFRequestContext(SFLogger.getLogger(this.getClass()));
+            requestContext.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Get the context that will be used by the request
+     *
+     * @return the context or null if recycleContext is disabled or the
+     * context is already in use
+     */
+    protected SFRequestContext acquireRequestContext() {
+        if (!isRecycleContext()) {
+            return null;
+        }
+        SFRequestContext context = getRequestContext();
+        return context.acquire() ? context : null;
+    }
+
+    /**
+     * Give back the context after the request
+     *
+     * @param context can be null
+     * @param async true if the request is still running in other thread
+     */
+    protected void releaseRequestContext(SFRequestContext context, boolean async) {
+        if (context == null) {
+            return;
+        }
+        if (async) {
+            // the objects are still used, the thread will create an new context
+            requestContext.remove();
+        } else {
+            context.release();
+        }
+    }
+
     /**
      * Search an method in the class that extend this, based on name, by reflection
      *
@@ -135,27 +380,42 @@ public abstract class SFHttpServlet extends HttpServlet {
      * @return
      * @throws SecurityException
      * @throws NoSuchMethodException
+     * @deprecated the dispatch don't call this method anymore, override
+     * {@link #getRouteToCall(String)}
      */
+    @Deprecated
     protected Method getMethodToCall(String name) throws SecurityException, NoSuchMethodException {
-        // search by the name of the method
-        for (Method declaredMethod : this.getClass().getDeclaredMethods()) {
-            if (declaredMethod.getName().equals(name)) {
-                return declaredMethod;
-            }
+        return getRouteToCall(name).getMethod();
+    }
+
+    /**
+     * Search an route in the route table, based on the java name of the method
+     *
+     * @param name
+     * @return
+     * @throws NoSuchMethodException
+     */
+    protected SFRoute getRouteToCall(String name) throws NoSuchMethodException {
+        SFRoute route = getRouteTable().getRoute(name);
+        if (route == null) {
+            throw new NoSuchMethodException("No such method named: " + name);
         }
-        throw new NoSuchMethodException("No such method named: " + name);
+        return route;
     }
 
+    /**
+     * @param urlParams
+     * @param name
+     * @param request
+     * @return
+     * @deprecated the dispatch don't call this method anymore, override
+     * {@link #getRouteMatch(List, String)}
+     */
+    @Deprecated
     protected Method getMethodAnnotatedWithName(List<String> urlParams, String name, HttpServletRequest request) {
-        final List<Method> methods = new ArrayList<>();
-        Class<?> klass = this.getClass();
-        final Method[] allMethods = klass.getDeclaredMethods();
-        for (final Method method : allMethods) {
-            if (method.isAnnotationPresent(SFWebMethod.class)) {
-                SFWebMethod wm = method.getAnnotation(SFWebMethod.class);
-                if (wm.name().equals(name) && isHttpMethodTypeCorrect(wm, method, urlParams, request)) {
-                    return method;
-                }
+        for (SFRoute route : getRouteTable().getRoutes()) {
+            if (route.getWebMethod().name().equals(name) && isHttpMethodTypeCorrect(route.getWebMethod(), route.getMethod(), urlParams, request)) {
+                return route.getMethod();
             }
         }
         return null;
@@ -169,8 +429,51 @@ public abstract class SFHttpServlet extends HttpServlet {
      * @return
      * @throws SecurityException
      * @throws NoSuchMethodException
+     * @deprecated the dispatch don't call this method anymore, override
+     * {@link #getRouteMatch(List, String)}
      */
+    @Deprecated
     protected Method getMethodToCall(List<String> urlParams, HttpServletRequest request) throws SecurityException, NoSuchMethodException {
+        return getRouteToCall(urlParams, request).getMethod();
+    }
+
+    /**
+     * Search an route in the route table, based on the first segment of the
+     * url (name of the method or attribute name of the annotation SFWebMethod)
+     *
+     * @param urlParams
+     * @param request
+     * @return
+     * @throws NoSuchMethodException
+     */
+    protected SFRoute getRouteToCall(List<String> urlParams, HttpServletRequest request) throws NoSuchMethodException {
+        return getRouteMatch(urlParams, request).getRoute();
+    }
+
+    /**
+     * Search an route in the route table, based on the first segment of the
+     * url (name of the method or attribute name of the annotation SFWebMethod)
+     * and the pathVars of SFWebMethod
+     *
+     * @param urlParams
+     * @param request
+     * @return the route and the path variables captured from the url
+     * @throws NoSuchMethodException
+     */
+    protected SFPathMatch getRouteMatch(List<String> urlParams, HttpServletRequest request) throws NoSuchMethodException {
+        return getRouteMatch(urlParams, request.getMethod());
+    }
+
+    /**
+     * Search an route in the route table for an http method, based on the
+     * first segment of the url and the pathVars of SFWebMethod
+     *
+     * @param urlParams
+     * @param httpMethod
+     * @return the route and the path variables captured from the url
+     * @throws NoSuchMethodException
+     */
+    protected SFPathMatch getRouteMatch(List<String> urlParams, String httpMethod) throws NoSuchMethodException {
 
         String methodToCall = urlParams.get(0);
 
@@ -180,32 +483,30 @@ public abstract class SFHttpServlet extends HttpServlet {
 
         urlParams.remove(0);
 
-        // search by the name of the method
-        for (Method declaredMethod : this.getClass().getDeclaredMethods()) {
-            if (declaredMethod.getName().equals(methodToCall)) {
-
-                SFWebMethod wm = declaredMethod.getAnnotation(SFWebMethod.class);
-                if (isHttpMethodTypeCorrect(wm, declaredMethod, urlParams, request)) {
-
-                    return declaredMethod;
-                }
-            }
-        }
-
-        // search by the attribute name of the annotation SFWebMethod
-        Method m = getMethodAnnotatedWithName(urlParams, methodToCall, request);
-        if (m == null) {
+        SFPathMatch match = getRouteTable().match(httpMethod, methodToCall, urlParams);
+        if (match == null) {
             throw new NoSuchMethodException("Method with name '" + methodToCall + "' could not be found.");
-        } else {
-            return m;
         }
-
+        return match;
     }
 
     protected String prepareError(int statusCode, String errorCode, String reason, String contentType, HttpServletResponse response) {
         response.setStatus(statusCode);
         response.setHeader("content-type", contentType);
-        return "{\"success\":false,\"error_code\":\"" + errorCode + "\",\"reason\":\"" + reason + "\"}";
+        return "{\"success\":false,\"error_code\":\"" + jsonEscape(errorCode) + "\",\"reason\":\"" + jsonEscape(reason) + "\"}";
+    }
+
+    /**
+     * Escape an value to be used inside an json string (quotes, line breaks, etc)
+     *
+     * @param value
+     * @return
+     */
+    protected static String jsonEscape(String value) {
+        if (value == null) {
+            return null;
+        }
+        return new String(JsonStringEncoder.getInstance().quoteAsString(value));
     }
 
     protected Object parseUnrecognizedParameter(SFLogger thisLogger, Method method, Parameter p, SFServletContainer container) throws SFParseParameterException {
@@ -222,166 +523,720 @@ public abstract class SFHttpServlet extends HttpServlet {
 
     protected List<Object> parseParameters(SFLogger thisLogger, Method method, Parameter[] parameters, SFServletContainer container) throws SFParseParameterException {
 
-        List<Object> arrParam = new ArrayList<>();
+        SFRoute route = container.getRoute();
+        if (route == null || route.getMethod() != method) {
+            route = getRouteTable().getRoute(method);
+        }
 
-        SFWebMethod wm = method.getAnnotation(SFWebMethod.class);
+        SFWebMethod wm = route != null ? route.getWebMethod() : method.getAnnotation(SFWebMethod.class);
+        SFParamBinder[] binders = route != null ? route.getBinders() : SFParamBinder.compile(wm, null, parameters);
+        SFPathMatch pathMatch = route != null && route.isPathBound() ? getPathMatch(method, wm, container) : null;
 
-        for (Parameter p : parameters) {
+        List<Object> arrParam = new ArrayList<>(binders.length);
 
-            if (SFServletContainer.class.isAssignableFrom(p.getType())) {
-                arrParam.add(parseRecognizedParameter(thisLogger, method, p, container, container));
-                continue;
+        for (int i = 0; i < binders.length; i++) {
+            Object value = binders[i].bind(container, pathMatch, logger);
+            if (value == SFParamBinder.UNRECOGNIZED) {
+                // if nothing found for that object, set it as null
+                arrParam.add(parseUnrecognizedParameter(thisLogger, method, parameters[i], container));
+            } else {
+                arrParam.add(parseRecognizedParameter(thisLogger, method, parameters[i], value, container));
             }
+        }
 
-            SFRequestParam arp = p.getAnnotation(SFRequestParam.class);
-            if (arp != null) {
+        return postParseParameters(thisLogger, method, parameters, arrParam, container);
 
-                Object paramValue;
-                // parse param of type SFMsisdn
-                if (SFMsisdn.class.isAssignableFrom(p.getType())) {
+    }
 
-                    paramValue = container.getParameterLong(arp.name(), null);
-                    if (paramValue == null && arp.required()) {
-                        throw new SFParseParameterException("Required parameter was not found or have an invalid value: " + arp.name());
-                    }
+    /**
+     * Get the path variables of the method, reusing the match made when the
+     * route was resolved by url
+     *
+     * @param method
+     * @param wm
+     * @param container
+     * @return the match or null if the url don't match the pathVars
+     */
+    protected SFPathMatch getPathMatch(Method method, SFWebMethod wm, SFServletContainer container) {
+        SFPathMatch match = container.getPathMatch();
+        if (match != null && match.getRoute() != null && match.getRoute().getMethod().equals(method)) {
+            return match;
+        }
+        SFRoute route = getRouteTable().getRoute(method);
+        SFPathTemplate template = route != null && route.getPathTemplate() != null ? route.getPathTemplate() : SFPathUrlParser.compile(wm.pathVars());
+        return template.match(container.getPathParameters());
+    }
 
-                    SFMsisdn msisdn;
-                    if (paramValue == null && !arp.required() && !arp.default_value().equals(SFRequestParam.NULL_VALUE)) {
-                        msisdn = new SFMsisdn(arp.default_value(), logger);
-                    } else {
-                        msisdn = new SFMsisdn((Long) paramValue, logger);
-                    }
+    /**
+     * Call the method in the children class, using the invoker created when
+     * the route table was built
+     *
+     * @param thisLogger
+     * @param method
+     * @param instance
+     * @param annotation
+     * @param container
+     * @param parameters
+     * @param paramsValue
+     * @return
+     * @throws Exception
+     */
+    protected Object invokeMethod(SFLogger thisLogger, Method method, Object instance, SFWebMethod annotation, SFServletContainer container, Parameter[] parameters, List<Object> paramsValue) throws Exception {
+        SFRoute route = container != null ? container.getRoute() : null;
+        if (route == null || route.getMethod() != method) {
+            route = getRouteTable().getRoute(method);
+        }
+        if (route == null) {
+            return method.invoke(instance, paramsValue.toArray());
+        }
+        return route.getInvoker().invoke(instance, paramsValue);
+    }
 
-                    if (!msisdn.isValid() && arp.required()) {
-                        throw new SFParseParameterException("framework_invalid_msisdn", "Received an invalid msisdn on parameter: " + arp.name());
-                    }
-                    paramValue = msisdn;
+    protected Object getMethodInstance(SFLogger thisLogger) throws Exception {
+        return getInstanceProvider().acquire(thisLogger);
+    }
 
-                    // parse params of system types (String, int, etc..) 
-                } else {
-                    paramValue = container.getParameter(arp.name(), null, p.getType());
-                }
+    /**
+     * Give back the instance returned by getMethodInstance after the call
+     *
+     * @param instance
+     */
+    protected void releaseMethodInstance(Object instance) {
+        getInstanceProvider().release(instance);
+    }
 
-                if (paramValue == null && arp.required()) {
-                    throw new SFParseParameterException("Required parameter was not found or have an invalid value: " + arp.name());
-                }
+    /**
+     * Called on an instance kept by SFInstanceScope THREAD before it is used
+     * by another request, override to clear the state of the previous request
+     * (call super)
+     *
+     * @param thisLogger logger of the new request
+     */
+    protected void recycleInstance(SFLogger thisLogger) {
+        this.logger = thisLogger;
+    }
 
-                // trim & check if value is empty (in case of string)
-                if (paramValue instanceof String) {
-                    String val = ((String) paramValue).trim();
-                    if (val.isEmpty() && arp.required()) {
-                        throw new SFParseParameterException("Required parameter was not found or have an invalid value: " + arp.name());
+    /**
+     * Print the return of the method of the route, the objects are serialized
+     * by the SFSerializer of the contentType of SFWebMethod (if any, see
+     * isSerializedOutput), the other values are printed by
+     * printOutput(Object, PrintWriter)
+     *
+     * @param output
+     * @param writter
+     * @param container
+     * @throws IOException
+     */
+    protected void printOutput(Object output, PrintWriter writter, SFServletContainer container) throws IOException {
+        if (output instanceof SFFileResponse && container != null) {
+            printFileOutput((SFFileResponse) output, writter, container);
+            return;
+        }
+        SFRoute route = container != null ? container.getRoute() : null;
+        if (route != null && route.getMediaType() != null && isSerializedOutput(output)) {
+            SFSerializer serializer = SFSerializers.get(route.getMediaType());
+            if (serializer != null) {
+                printSerializedOutput(output, serializer, writter, container);
+                return;
+            }
+        }
+        printOutput(output, writter);
+    }
+
+    /**
+     * Send the file returned by the method, without compression (the ranges
+     * and the Content-Length refer to the bytes of the file)
+     *
+     * @param file
+     * @param writter
+     * @param container
+     * @throws IOException
+     */
+    protected void printFileOutput(SFFileResponse file, PrintWriter writter, SFServletContainer container) throws IOException {
+        HttpServletResponse response = container.getResponse();
+        if (response instanceof SFCaptureResponse) {
+            // the file is not kept in memory nor cached (SFCacheable, SFConditional)
+            response = ((SFCaptureResponse) response).bypass();
+        }
+        if (response instanceof SFCompressionResponse) {
+            response = (HttpServletResponse) ((SFCompressionResponse) response).getResponse();
+        }
+        try {
+            file.send(container.getRequest(), response);
+        } catch (NoSuchFileException ex) {
+            logger.warn("File not found: " + file.getPath());
+            writter.println(prepareError(404, "framework_file_not_found", "File not Found", CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+        } catch (SFClientAbortException ex) {
+            logger.debug("Client disconnected, file response stopped");
+        } finally {
+            if (file.isDeleteOnComplete()) {
+                Files.deleteIfExists(file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Return true if the output must be written by an SFSerializer: maps,
+     * collections, arrays and objects that don't override toString()
+     *
+     * @param output
+     * @return
+     */
+    protected boolean isSerializedOutput(Object output) {
+        if (output == null || output instanceof CharSequence || output instanceof Number || output instanceof Boolean || output instanceof Character) {
+            return false;
+        }
+        if (output instanceof Map || output instanceof Collection || output.getClass().isArray()) {
+            return true;
+        }
+        if (isStreamingOutput(output)) {
+            return false;
+        }
+        // objects that know how to print themselves (ex: JsonElement of gson)
+        return !OVERRIDES_TO_STRING.get(output.getClass());
+    }
+
+    private static final ClassValue<Boolean> OVERRIDES_TO_STRING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> clazz) {
+            try {
+                return clazz.getMethod("toString").getDeclaringClass() != Object.class;
+            } catch (NoSuchMethodException ex) {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * Write the output with an serializer, directly in the OutputStream of the
+     * response when the encoding is UTF-8 and nothing was printed yet
+     *
+     * @param output
+     * @param serializer
+     * @param writter
+     * @param container
+     * @throws IOException
+     */
+    protected void printSerializedOutput(Object output, SFSerializer serializer, PrintWriter writter, SFServletContainer container) throws IOException {
+        if (writter instanceof SFResponseWriter && "UTF-8".equalsIgnoreCase(container.getResponse().getCharacterEncoding())) {
+            OutputStream os = ((SFResponseWriter) writter).getOutputStream();
+            if (os != null) {
+                serializer.write(output, os);
+                return;
+            }
+        }
+        serializer.write(output, writter);
+    }
+
+    protected void printOutput(Object output, PrintWriter writter) {
+        if (isStreamingOutput(output)) {
+            printStreamingOutput(output, writter);
+            return;
+        }
+        // if the return is not null, output to user
+        if (output != null) {
+            writter.print(output.toString());
+        }
+    }
+
+    /**
+     * Return true if the output must be written in chunks (SFStreamingBody,
+     * Stream or Iterator)
+     *
+     * @param output
+     * @return
+     */
+    protected boolean isStreamingOutput(Object output) {
+        return output instanceof SFStreamingBody || output instanceof BaseStream || output instanceof Iterator;
+    }
+
+    /**
+     * Write an streaming output, flushing each streamChunkSize chars. Stop
+     * when the client disconnect, the stream (or iterator, if AutoCloseable)
+     * is always closed
+     *
+     * @param output
+     * @param writter
+     */
+    protected void printStreamingOutput(Object output, PrintWriter writter) {
+        try (SFChunkedWriter out = new SFChunkedWriter(writter, getStreamChunkSize())) {
+            if (output instanceof SFStreamingBody) {
+                ((SFStreamingBody) output).writeTo(out);
+            } else if (output instanceof BaseStream) {
+                try (BaseStream<?, ?> stream = (BaseStream<?, ?>) output) {
+                    printStreamElements(stream.iterator(), out);
+                }
+            } else {
+                Iterator<?> it = (Iterator<?>) output;
+                try {
+                    printStreamElements(it, out);
+                } finally {
+                    if (it instanceof AutoCloseable) {
+                        ((AutoCloseable) it).close();
                     }
-                    arrParam.add(parseRecognizedParameter(thisLogger, method, p, val, container));
-                    continue;
                 }
+            }
+        } catch (SFClientAbortException ex) {
+            logger.debug("Client disconnected, streaming response stopped");
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Failed to write streaming response: " + ex.getMessage(), ex);
+        }
+    }
 
-                if (paramValue == null && !arp.required() && !arp.default_value().equals(SFRequestParam.NULL_VALUE)) {
-                    paramValue = SFServletContainer.castString(arp.default_value(), null, p.getType());
-                }
+    /**
+     * Write the elements of an Stream or Iterator
+     *
+     * @param it
+     * @param out
+     * @throws IOException
+     */
+    protected void printStreamElements(Iterator<?> it, Writer out) throws IOException {
+        while (it.hasNext()) {
+            printStreamElement(it.next(), out);
+        }
+    }
 
-                arrParam.add(parseRecognizedParameter(thisLogger, method, p, paramValue, container));
-                continue;
-            }
-
-            // Parse Path Parameters
-            if (wm != null && !wm.pathVars().equals(SFWebMethod.defaultPathVars)) {
-
-                SFPathParam app = p.getAnnotation(SFPathParam.class);
-                if (app != null) {
-                    List<SFPathValue> parse = SFPathUrlParser.parse(wm.pathVars(), container.getPathParameters());
-                    if (parse != null) {
-                        boolean found = false;
-                        for (SFPathValue pv : parse) {
-                            if (app.name().equals(pv.var)) {
-                                
-                                String defaultStrValue = app.default_value().equals(SFPathParam.NULL_VALUE) ? null : app.default_value();
-                                Object defaultValue = SFServletContainer.castString(defaultStrValue, null, p.getType());
-                                
-                                Object value = SFServletContainer.castString(pv.value, null, p.getType());
-                                
-                                if (value == null && app.required()) {
-                                    throw new SFParseParameterException("Required path parameter was not found or have an invalid value: " + app.name());
-                                }
-                                
-                                if (value instanceof String) {
-                                    String val = ((String) value).trim();
-                                    if (val.isEmpty() && app.required()) {
-                                        throw new SFParseParameterException("Required path parameter was not found or have an invalid value: " + app.name());
-                                    }
-                                    value = val;
-                                }
-                                
-                                arrParam.add(parseRecognizedParameter(thisLogger, method, p, (value == null ? defaultValue : value), container));
-                                
-                                found = true;
-                                break;
-                                
-                            }
-                        }
-                        if (found) {
-                            continue;
-                        }
-                    }
+    /**
+     * Write one element of an Stream or Iterator, by default one line with
+     * the toString() of the element
+     *
+     * @param element
+     * @param out
+     * @throws IOException
+     */
+    protected void printStreamElement(Object element, Writer out) throws IOException {
+        if (element != null) {
+            out.write(element.toString());
+            out.write('\n');
+        }
+    }
+
+    /**
+     * @param wm
+     * @param m
+     * @param urlParams
+     * @param req
+     * @return
+     * @deprecated the routes are matched by the route table, the dispatch
+     * don't call this method anymore, override
+     * {@link #getRouteMatch(List, String)}
+     */
+    @Deprecated
+    protected boolean isHttpMethodTypeCorrect(SFWebMethod wm, Method m, List<String> urlParams, HttpServletRequest req) {
+
+        // discard if theres no annotation SFWebMethod
+        if (wm == null) {
+            return false;
+        }
+
+        // discard if the type of request (get/post/etc) is different from the defined in SFWebMethod
+        if (!wm.method().equals(METHOD_ALL) && !wm.method().equals(req.getMethod())) {
+            return false;
+        }
+
+        if (!wm.pathVars().equals(SFWebMethod.defaultPathVars)) {
+            SFRoute route = getRouteTable().getRoute(m);
+            SFPathTemplate template = route != null && route.getPathTemplate() != null ? route.getPathTemplate() : SFPathUrlParser.compile(wm.pathVars());
+            return template.match(urlParams) != null;
+        }
+
+        return true;
+    }
+
+    /**
+     * Call the method in the children class and output the return (if not null)
+     *
+     * @param thisLogger
+     * @param out
+     * @param m
+     * @param container
+     * @deprecated the dispatch don't call this method anymore, override
+     * {@link #callDestMethod(SFLogger, PrintWriter, SFRoute, SFServletContainer)}
+     */
+    @Deprecated
+    protected void callDestMethod(SFLogger thisLogger, PrintWriter out, Method m, SFServletContainer container) {
+        callDestMethod(thisLogger, out, m == null ? null : getRouteTable().getRoute(m), container);
+    }
+
+    /**
+     * Call the method of the route in the children class and output the return
+     * (if not null), recording the metrics of the route
+     *
+     * @param thisLogger
+     * @param out
+     * @param route
+     * @param container
+     */
+    protected void callDestMethod(SFLogger thisLogger, PrintWriter out, SFRoute route, SFServletContainer container) {
+        if (route == null || container == null) {
+            callRoute(thisLogger, out, route, container);
+            return;
+        }
+
+        route.getMetrics().start();
+        try {
+            if (route.isConditional() && isCacheableRequest(container)) {
+                callConditionalRoute(thisLogger, out, route, container);
+            } else if (route.getCache() != null && isCacheableRequest(container) && route.getCache().isCacheable(container.getRequest())) {
+                callCachedRoute(thisLogger, out, route, container);
+            } else {
+                callRoute(thisLogger, out, route, container);
+            }
+        } finally {
+            // async requests are recorded when the response is written
+            if (!container.isAsyncStarted()) {
+                recordMetrics(route, container);
+            }
+        }
+    }
+
+    /**
+     * Return true if the response of the request can be read from (and stored
+     * in) the cache of the route
+     *
+     * @param container
+     * @return
+     */
+    protected boolean isCacheableRequest(SFServletContainer container) {
+        String method = container.getRequestMethod();
+        return METHOD_GET.equals(method) || METHOD_HEAD.equals(method);
+    }
+
+    /**
+     * Answer the request with the response in the cache of the route, the
+     * parameters are not parsed and the method is not called. If the response
+     * is not in cache (or expired) the method is called by only one request,
+     * the others wait or use the stale response.
+     *
+     * @param thisLogger
+     * @param out
+     * @param route
+     * @param container
+     */
+    protected void callCachedRoute(SFLogger thisLogger, PrintWriter out, SFRoute route, SFServletContainer container) {
+        SFResponseCache cache = route.getCache();
+        String key = cache.getKey(container.getRequest());
+
+        try {
+            long now = System.nanoTime();
+            SFResponseCache.Entry entry = cache.get(key, now);
+            if (entry != null && entry.isFresh(now)) {
+                writeCachedResponse(route, container, out, entry);
+                return;
+            }
+
+            CompletableFuture<SFResponseCache.Entry> loading = cache.startLoading(key);
+            if (loading != null) {
+                loadCachedRoute(thisLogger, out, route, container, key, loading);
+                return;
+            }
+
+            // other request is calling the method
+            if (entry == null) {
+                entry = cache.await(key, getAsyncTimeout(route));
+            }
+            if (entry != null) {
+                writeCachedResponse(route, container, out, entry);
+            } else {
+                callRoute(thisLogger, out, route, container);
+            }
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            thisLogger.error("Interrupted while waiting the response of " + route, ex);
+            out.println(prepareError(503, "framework_async_timeout", "Service Unavailable: request timed out", CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+        } catch (IOException ex) {
+            thisLogger.error("Failed to write the cached response: " + ExceptionUtils.getRootCauseMessage(ex), ex);
+        }
+    }
+
+    /**
+     * Call the method of the route capturing the response, and store it in
+     * the cache if it can be cached
+     *
+     * @param thisLogger
+     * @param out
+     * @param route
+     * @param container
+     * @param key
+     * @param loading returned by SFResponseCache.startLoading
+     * @throws IOException
+     */
+    protected void loadCachedRoute(SFLogger thisLogger, PrintWriter out, SFRoute route, SFServletContainer container, String key, CompletableFuture<SFResponseCache.Entry> loading) throws IOException {
+        SFResponseCache cache = route.getCache();
+
+        SFResponseCache.Entry entry = null;
+        SFCaptureResponse capture;
+        byte[] body;
+        try {
+            capture = captureRoute(thisLogger, route, container);
+            if (container.isAsyncStarted()) {
+                // the method started async by itself, the response is not complete
+                thisLogger.warn("Response of " + route + " went async, it will not be cached");
+                return;
+            }
+            body = capture.getBody();
+            if (route.isConditional() && route.getVersionInvoker() == null && !capture.isBypassed()) {
+                addHashETag(capture, body);
+            }
+            if (capture.isCacheable()) {
+                entry = cache.newEntry(capture.getStatus(), capture.getRecordedHeaders(), body);
+            }
+        } finally {
+            cache.finishLoading(key, loading, entry);
+        }
+
+        if (capture.isBypassed()) {
+            // the response was already sent (ex: SFFileResponse), only an
+            // error can be in the capture
+            writeCachedBody(body, out, container);
+            return;
+        }
+
+        // the status and headers were already set in the response
+        writeConditionalBody(route, capture.getStatus(), body, out, container);
+    }
+
+    /**
+     * Call the method of the route with an response that keep the body in
+     * memory, the status and headers are set in the response of the container.
+     * The methods that return an CompletionStage (or run in an virtual thread)
+     * are waited in the current thread (see isCapturedResponse)
+     *
+     * @param thisLogger
+     * @param route
+     * @param container
+     * @return
+     */
+    protected SFCaptureResponse captureRoute(SFLogger thisLogger, SFRoute route, SFServletContainer container) {
+        HttpServletResponse response = container.getResponse();
+        PrintWriter out = container.getWriter();
+        SFCaptureResponse capture = new SFCaptureResponse(response);
+        SFResponseWriter captureOut = new SFResponseWriter(capture);
+
+        container.setResponse(capture);
+        container.setWriter(captureOut);
+        try {
+            callRoute(thisLogger, captureOut, route, container);
+            captureOut.flush();
+        } finally {
+            container.setResponse(response);
+            container.setWriter(out);
+        }
+        return capture;
+    }
+
+    /**
+     * Call the method of an route annotated with SFConditional, answering 304
+     * (without body) if the client already have the response
+     *
+     * @param thisLogger
+     * @param out
+     * @param route
+     * @param container
+     */
+    protected void callConditionalRoute(SFLogger thisLogger, PrintWriter out, SFRoute route, SFServletContainer container) {
+
+        if (route.getVersionInvoker() != null) {
+            try {
+                if (checkVersion(thisLogger, route, container)) {
+                    return;
                 }
+            } catch (Exception ex) {
+                thisLogger.error("Failed to get the version of " + route + ": " + ExceptionUtils.getRootCauseMessage(ex), ex);
             }
+        }
+
+        // the cache validate the ETag of the stored responses
+        if (route.getCache() != null && route.getCache().isCacheable(container.getRequest())) {
+            callCachedRoute(thisLogger, out, route, container);
+            return;
+        }
 
-            // if nothing found for that object, set it as null
-            arrParam.add(parseUnrecognizedParameter(thisLogger, method, p, container));
+        if (route.getVersionInvoker() != null) {
+            callRoute(thisLogger, out, route, container);
+            return;
+        }
+
+        try {
+            SFCaptureResponse capture = captureRoute(thisLogger, route, container);
+            if (container.isAsyncStarted()) {
+                thisLogger.warn("Response of " + route + " went async, the ETag can't be computed");
+                return;
+            }
+            byte[] body = capture.getBody();
+            if (capture.isBypassed()) {
+                // the response was already sent, with its own validators
+                // (ex: SFFileResponse), only an error can be in the capture
+                writeCachedBody(body, out, container);
+                return;
+            }
+            addHashETag(capture, body);
+            writeConditionalBody(route, capture.getStatus(), body, out, container);
+        } catch (IOException ex) {
+            thisLogger.error("Failed to write the response: " + ExceptionUtils.getRootCauseMessage(ex), ex);
+        }
+    }
+
+    /**
+     * Call the version method of SFConditional, setting the ETag or
+     * Last-Modified of the response
+     *
+     * @param thisLogger
+     * @param route
+     * @param container
+     * @return true if the client already have this version, the 304 was set
+     * in the response and the method of the route must not be called
+     * @throws Exception
+     */
+    protected boolean checkVersion(SFLogger thisLogger, SFRoute route, SFServletContainer container) throws Exception {
+        Object instance = getMethodInstance(thisLogger);
+        Object version;
+        try {
+            List<Object> args = route.isVersionWithContainer() ? Collections.singletonList(container) : Collections.emptyList();
+            version = route.getVersionInvoker().invoke(instance, args);
+        } finally {
+            releaseMethodInstance(instance);
+        }
 
+        if (version == null) {
+            return false;
         }
 
-        return postParseParameters(thisLogger, method, parameters, arrParam, container);
+        HttpServletResponse response = container.getResponse();
+        if (version instanceof Date) {
+            response.setDateHeader(SFConditionalRequest.LAST_MODIFIED, ((Date) version).getTime());
+        } else {
+            response.setHeader(SFConditionalRequest.ETAG, SFConditionalRequest.formatETag(version.toString()));
+        }
 
+        if (SFConditionalRequest.isNotModified(container.getRequest(), response)) {
+            container.setRoute(route);
+            checkAllowCors(container.getRequest(), response, route);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
     }
 
-    protected Object invokeMethod(SFLogger thisLogger, Method method, Object instance, SFWebMethod annotation, SFServletContainer container, Parameter[] parameters, List<Object> paramsValue) throws Exception {
-        return method.invoke(instance, paramsValue.toArray());
+    /**
+     * Set the hash of the body as ETag, if the response is 200 and the method
+     * didn't set an ETag
+     *
+     * @param capture
+     * @param body
+     */
+    protected void addHashETag(SFCaptureResponse capture, byte[] body) {
+        if (capture.getStatus() == HttpServletResponse.SC_OK && capture.getHeader(SFConditionalRequest.ETAG) == null) {
+            capture.setHeader(SFConditionalRequest.ETAG, SFConditionalRequest.hashETag(body, 0, body.length));
+        }
     }
 
-    protected Object getMethodInstance(SFLogger thisLogger) throws Exception {
-        if (this.getClass().getAnnotation(ApplicationScoped.class) != null) {
-            return this;
-        } else {
-            return this.getClass().getConstructor(SFLogger.class).newInstance(thisLogger);
+    /**
+     * Write the body of an response, or set 304 if the route is
+     * SFConditional and the client already have it
+     *
+     * @param route
+     * @param status
+     * @param body
+     * @param out
+     * @param container
+     * @throws IOException
+     */
+    protected void writeConditionalBody(SFRoute route, int status, byte[] body, PrintWriter out, SFServletContainer container) throws IOException {
+        if (route.isConditional() && status == HttpServletResponse.SC_OK
+                && SFConditionalRequest.isNotModified(container.getRequest(), container.getResponse())) {
+            container.getResponse().setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
+        writeCachedBody(body, out, container);
     }
 
-    protected void printOutput(Object output, PrintWriter writter) {
-        // if the return is not null, output to user
-        if (output != null) {
-            writter.print(output.toString());
+    /**
+     * Write an response stored in cache
+     *
+     * @param route
+     * @param container
+     * @param out
+     * @param entry
+     * @throws IOException
+     */
+    protected void writeCachedResponse(SFRoute route, SFServletContainer container, PrintWriter out, SFResponseCache.Entry entry) throws IOException {
+        container.setRoute(route);
+        HttpServletResponse response = container.getResponse();
+        response.setStatus(entry.getStatus());
+
+        List<String[]> headers = entry.getHeaders();
+        for (int i = 0; i < headers.size(); i++) {
+            String[] h = headers.get(i);
+            if (h[0].equalsIgnoreCase("Content-Type")) {
+                response.setContentType(h[1]);
+            } else if (isFirstHeader(headers, i)) {
+                response.setHeader(h[0], h[1]);
+            } else {
+                response.addHeader(h[0], h[1]);
+            }
         }
-    }
+        checkAllowCors(container.getRequest(), response, route);
 
-    protected boolean isHttpMethodTypeCorrect(SFWebMethod wm, Method m, List<String> urlParams, HttpServletRequest req) {
+        writeConditionalBody(route, entry.getStatus(), entry.getBody(), out, container);
+    }
 
-        // discard if theres no annotation SFWebMethod
-        if (wm == null) {
-            return false;
+    private static boolean isFirstHeader(List<String[]> headers, int index) {
+        String name = headers.get(index)[0];
+        for (int i = 0; i < index; i++) {
+            if (headers.get(i)[0].equalsIgnoreCase(name)) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        // discard if the type of request (get/post/etc) is different from the defined in SFWebMethod
-        if (!wm.method().equals(METHOD_ALL) && !wm.method().equals(req.getMethod())) {
-            return false;
+    /**
+     * Write the body of an cached response, the bytes are written directly in
+     * the OutputStream of the response if nothing was printed
+     *
+     * @param body
+     * @param out
+     * @param container
+     * @throws IOException
+     */
+    protected void writeCachedBody(byte[] body, PrintWriter out, SFServletContainer container) throws IOException {
+        if (body.length == 0) {
+            return;
         }
-
-        if (!wm.pathVars().equals(SFWebMethod.defaultPathVars)) {
-            return SFPathUrlParser.parse(wm.pathVars(), urlParams) != null;
+        OutputStream os = out instanceof SFResponseWriter ? ((SFResponseWriter) out).getOutputStream() : null;
+        if (os != null) {
+            os.write(body);
+        } else {
+            String charset = container.getResponse().getCharacterEncoding();
+            out.write(new String(body, charset != null ? charset : "ISO-8859-1"));
         }
+    }
 
-        return true;
+    /**
+     * Record the end of an request in the metrics of the route
+     *
+     * @param route
+     * @param container
+     */
+    protected void recordMetrics(SFRoute route, SFServletContainer container) {
+        if (route != null) {
+            route.getMetrics().end(container.getResponse().getStatus(), System.nanoTime() - container.getStartTime());
+        }
     }
 
     /**
-     * Call the method in the children class and output the return (if not null)
+     * Call the method of the route in the children class and output the return (if not null)
      *
      * @param thisLogger
      * @param out
-     * @param m
+     * @param route
      * @param container
      */
-    protected void callDestMethod(SFLogger thisLogger, PrintWriter out, Method m, SFServletContainer container) {
+    protected void callRoute(SFLogger thisLogger, PrintWriter out, SFRoute route, SFServletContainer container) {
 
         // discard if the container is null
         if (container == null) {
@@ -391,7 +1246,7 @@ public abstract class SFHttpServlet extends HttpServlet {
         }
 
         // discard if method is null
-        if (m == null) {
+        if (route == null) {
             thisLogger.error("method = null");
 
             out.println(prepareError(404, "framework_no_such_method", "Page not Found", CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
@@ -399,7 +1254,8 @@ public abstract class SFHttpServlet extends HttpServlet {
             return;
         }
 
-        SFWebMethod wm = m.getAnnotation(SFWebMethod.class);
+        Method m = route.getMethod();
+        SFWebMethod wm = route.getWebMethod();
         try {
 
             // Set the content type defined by annotation SFWebMethod
@@ -409,15 +1265,81 @@ public abstract class SFHttpServlet extends HttpServlet {
 
             try {
 
-                checkAllowCors(container.getRequest(), container.getResponse(), m);
+                container.setRoute(route);
+                checkAllowCors(container.getRequest(), container.getResponse(), route);
+
+                SFDeadline deadline = newDeadline(route, container);
+                container.setDeadline(deadline);
+
+                // discard if the route already have too many requests running
+                SFBulkhead bulkhead = route.getBulkhead();
+                if (bulkhead != null && !bulkhead.acquire()) {
+                    thisLogger.warn("Max concurrency of " + route + " reached (" + bulkhead.getLimit() + ")");
+                    container.getResponse().setIntHeader("Retry-After", bulkhead.getRetryAfter());
+                    out.println(prepareError(503, "framework_too_many_requests", "Service Unavailable: too many concurrent requests", CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+                    return;
+                }
+                long acquired = System.nanoTime();
+
+                CompletionStage<?> stage = null;
+                boolean invoked = false;
+                SFDeadline previous = SFDeadline.attach(deadline);
+                try {
+
+                    // discard if the budget of the request ran out while waiting
+                    if (deadline != null && deadline.isExpired()) {
+                        thisLogger.warn("Deadline of " + route + " exceeded before the call");
+                        out.println(prepareError(503, "framework_deadline_exceeded", "Service Unavailable: request deadline exceeded", CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+                        return;
+                    }
+
+                    // call the method and capture the output
+                    Parameter[] params = route.getParameters();
+                    List<Object> paramsValue = parseParameters(thisLogger, m, params, container);
+                    Object instance = getMethodInstance(thisLogger);
+                    boolean async = false;
+                    try {
+                        invoked = true;
+                        if (isVirtualThreadCall(route, container)) {
+                            stage = invokeOnVirtualThread(thisLogger, m, instance, wm, container, params, paramsValue);
+                        } else {
+                            obj = invokeMethod(thisLogger, m, instance, wm, container, params, paramsValue);
+
+                            if (obj instanceof CompletionStage) {
+                                stage = (CompletionStage<?>) obj;
+                            } else {
+                                // print the output to the user
+                                printOutput(obj, out, container);
+                            }
+                        }
 
-                // call the method and capture the output
-                Parameter[] params = m.getParameters();
-                List<Object> paramsValue = parseParameters(thisLogger, m, params, container);
-                obj = invokeMethod(thisLogger, m, getMethodInstance(thisLogger), wm, container, params, paramsValue);
+                        if (stage != null) {
+                            // the output will be printed when the stage complete
+                            async = processAsyncResult(thisLogger, out, route, container, instance, stage);
+                        }
+                    } finally {
+                        if (!async) {
+                            releaseMethodInstance(instance);
+                        }
+                    }
 
-                // print the output to the user
-                printOutput(obj, out);
+                } finally {
+                    SFDeadline.detach(previous);
+                    if (!invoked) {
+                        // the files of the parameters already bound are not used
+                        container.deleteUploads();
+                    }
+                    if (bulkhead != null) {
+                        if (stage != null) {
+                            // the method is still running, the slot is released
+                            // when the stage completes or is cancelled by the
+                            // async timeout
+                            stage.whenComplete((result, error) -> bulkhead.release(System.nanoTime() - acquired));
+                        } else {
+                            bulkhead.release(System.nanoTime() - acquired);
+                        }
+                    }
+                }
 
             } catch (SFParseParameterException ex) {
 
@@ -440,69 +1362,369 @@ public abstract class SFHttpServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Handle an method that returned an CompletionStage, the container thread
+     * is released and the output is printed when the stage complete. If the
+     * servlet don't support async (asyncSupported of WebServlet) the current
+     * thread wait for the stage.
+     *
+     * @param thisLogger
+     * @param out
+     * @param route
+     * @param container
+     * @param instance the instance returned by getMethodInstance
+     * @param stage
+     * @return true if the request was put in async mode, the instance will be
+     * released when the response is written
+     * @throws IOException
+     */
+    protected boolean processAsyncResult(SFLogger thisLogger, PrintWriter out, SFRoute route, SFServletContainer container, Object instance, CompletionStage<?> stage) throws IOException {
+
+        long timeout = getAsyncTimeout(route);
+        HttpServletRequest request = container.getRequest();
+
+        // the captured responses (cache, SFConditional) must be complete
+        // when the capture return, so the container thread wait for them
+        if (request.isAsyncSupported() && !isCapturedResponse(container)) {
+            AsyncContext asyncContext = request.startAsync(request, container.getResponse());
+            asyncContext.setTimeout(timeout > 0 ? timeout : 0);
+            container.setAsyncContext(asyncContext);
+            newAsyncResponse(thisLogger, out, container, instance, asyncContext).start(stage);
+            return true;
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        stage.whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        });
+
+        try {
+            Object result = timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+            printOutput(result, out, container);
+        } catch (TimeoutException ex) {
+            printAsyncTimeout(thisLogger, out, container, timeout);
+            // also release the slot of the bulkhead
+            SFAsyncResponse.cancel(stage);
+        } catch (ExecutionException ex) {
+            printAsyncError(thisLogger, out, container, SFAsyncResponse.unwrap(ex));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            printAsyncError(thisLogger, out, container, ex);
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the method of the route will run in an virtual thread,
+     * the methods run in the container thread if the JVM don't support
+     * virtual threads or the servlet don't support async
+     *
+     * @param route
+     * @param container
+     * @return
+     */
+    protected boolean isVirtualThreadCall(SFRoute route, SFServletContainer container) {
+        return route.isVirtualThread() && !isCapturedResponse(container) && getVirtualThreadExecutor() != null && container.getRequest().isAsyncSupported();
+    }
+
+    /**
+     * Return true if the response of the request is being captured to be
+     * cached or hashed (SFCacheable, SFConditional), the method must then
+     * complete in the container thread
+     *
+     * @param container
+     * @return
+     */
+    protected boolean isCapturedResponse(SFServletContainer container) {
+        return container.getResponse() instanceof SFCaptureResponse;
+    }
+
+    /**
+     * Get the executor used by the routes with virtualThread = true
+     *
+     * @return the executor or null if virtual threads are not supported
+     */
+    protected Executor getVirtualThreadExecutor() {
+        return SFVirtualThreads.getExecutor();
+    }
+
+    /**
+     * Call the method in an virtual thread
+     *
+     * @param thisLogger
+     * @param method
+     * @param instance
+     * @param annotation
+     * @param container
+     * @param parameters
+     * @param paramsValue
+     * @return an stage completed with the return of the method (or the
+     * return of the stage returned by the method), cancelling it interrupt
+     * the virtual thread if the method is still running
+     */
+    protected CompletionStage<Object> invokeOnVirtualThread(SFLogger thisLogger, Method method, Object instance, SFWebMethod annotation, SFServletContainer container, Parameter[] parameters, List<Object> paramsValue) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        Thread[] worker = new Thread[1];
+        future.whenComplete((result, error) -> {
+            if (error instanceof CancellationException) {
+                synchronized (worker) {
+                    if (worker[0] != null) {
+                        worker[0].interrupt();
+                    }
+                }
+            }
+        });
+        getVirtualThreadExecutor().execute(() -> {
+            if (future.isDone()) {
+                // cancelled before it started
+                return;
+            }
+            synchronized (worker) {
+                worker[0] = Thread.currentThread();
+            }
+            SFDeadline previous = SFDeadline.attach(container.getDeadline());
+            try {
+                Object result = invokeMethod(thisLogger, method, instance, annotation, container, parameters, paramsValue);
+                if (result instanceof CompletionStage) {
+                    ((CompletionStage<?>) result).whenComplete((value, error) -> {
+                        if (error != null) {
+                            future.completeExceptionally(error);
+                        } else {
+                            future.complete(value);
+                        }
+                    });
+                } else {
+                    future.complete(result);
+                }
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            } finally {
+                synchronized (worker) {
+                    worker[0] = null;
+                }
+                SFDeadline.detach(previous);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Get the time budget in ms of an route, defined by the attribute
+     * requestTimeout of SFWebMethod or by the servlet
+     *
+     * @param route
+     * @return 0 or less means no deadline
+     */
+    protected long getRequestTimeout(SFRoute route) {
+        SFWebMethod wm = route != null ? route.getWebMethod() : null;
+        if (wm != null && wm.requestTimeout() != SFWebMethod.defaultRequestTimeout) {
+            return wm.requestTimeout();
+        }
+        return getRequestTimeout();
+    }
+
+    /**
+     * Create the deadline of the request, counted from the start of the
+     * request. The header X-Request-Timeout can only make the budget
+     * shorter, an client that give up earlier don't need the work to
+     * continue.
+     *
+     * @param route
+     * @param container
+     * @return the deadline or null if the request don't have one
+     */
+    protected SFDeadline newDeadline(SFRoute route, SFServletContainer container) {
+        long timeout = getRequestTimeout(route);
+        String header = container.getRequest().getHeader(HEADER_REQUEST_TIMEOUT);
+        if (header != null) {
+            try {
+                long client = Long.parseLong(header.trim());
+                if (client > 0 && (timeout <= 0 || client < timeout)) {
+                    timeout = client;
+                }
+            } catch (NumberFormatException ex) {
+                // ignore invalid values
+            }
+        }
+        return timeout > 0 ? SFDeadline.after(container.getStartTime(), timeout) : null;
+    }
+
+    protected SFAsyncResponse newAsyncResponse(SFLogger thisLogger, PrintWriter out, SFServletContainer container, Object instance, AsyncContext asyncContext) {
+        return new SFAsyncResponse(this, thisLogger, out, container, instance, asyncContext);
+    }
+
+    /**
+     * Get the async timeout of an route, defined by the attribute asyncTimeout
+     * of SFWebMethod or by the servlet
+     *
+     * @param route
+     * @return
+     */
+    protected long getAsyncTimeout(SFRoute route) {
+        SFWebMethod wm = route != null ? route.getWebMethod() : null;
+        if (wm != null && wm.asyncTimeout() != SFWebMethod.defaultAsyncTimeout) {
+            return wm.asyncTimeout();
+        }
+        return getAsyncTimeout();
+    }
+
+    /**
+     * Print the error of an CompletionStage completed exceptionally
+     *
+     * @param thisLogger
+     * @param out
+     * @param container
+     * @param ex
+     */
+    protected void printAsyncError(SFLogger thisLogger, PrintWriter out, SFServletContainer container, Throwable ex) {
+        if (ex instanceof SFParseParameterException) {
+            thisLogger.error(ex.getMessage());
+            out.println(prepareError(400, ((SFParseParameterException) ex).getErrorCode(), ex.getMessage(), CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+        } else {
+            thisLogger.error(ExceptionUtils.getRootCauseMessage(ex), ex);
+            out.println(prepareError(500, "framework_unhandled_exception", "Internal Server Error: " + ExceptionUtils.getRootCauseMessage(ex), CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+        }
+    }
+
+    /**
+     * Print the error of an CompletionStage not completed before the timeout
+     *
+     * @param thisLogger
+     * @param out
+     * @param container
+     * @param timeout
+     */
+    protected void printAsyncTimeout(SFLogger thisLogger, PrintWriter out, SFServletContainer container, long timeout) {
+        thisLogger.error("Async request timed out after " + timeout + "ms");
+        out.println(prepareError(503, "framework_async_timeout", "Service Unavailable: request timed out", CONTENT_TYPE_APPLICATION_JSON, container.getResponse()));
+    }
+
+    /**
+     * @param request
+     * @param response
+     * @param method
+     * @deprecated the dispatch don't call this method anymore, override
+     * {@link #checkAllowCors(HttpServletRequest, HttpServletResponse, SFRoute)}
+     */
+    @Deprecated
     protected void checkAllowCors(HttpServletRequest request, HttpServletResponse response, Method method) {
+        checkAllowCors(request, response, method == null ? null : getRouteTable().getRoute(method));
+    }
+
+    protected void checkAllowCors(HttpServletRequest request, HttpServletResponse response, SFRoute route) {
 
-        
-        boolean classHasAnnotation = this.getClass().getAnnotation(SFAllowCORS.class) != null;
-        
-        if (classHasAnnotation) {
-            response.addHeader("Access-Control-Allow-Origin", "*");
-            response.addHeader("Access-Control-Allow-Methods", "OPTIONS, GET, POST, DELETE, PUT");
-            response.addHeader("Access-Control-Allow-Headers", request.getHeader("Access-Control-Request-Headers"));
+        SFCorsPolicy cors = route != null ? route.getCorsPolicy() : getRouteTable().getCorsPolicy();
+
+        if (cors != null) {
+            cors.apply(request, response);
         }
     }
 
     /**
-     * Method to proccess an request of type OPTIONS
+     * Method to proccess an CORS preflight request (OPTIONS), the route is
+     * searched by the Access-Control-Request-Method and the method is not
+     * called
      *
      * @param request
      * @param response
      */
     protected void processOptionsRequest(HttpServletRequest request, HttpServletResponse response, SFLogger thisLogger) {
-        try {
-            // set the encoding of the request
-            request.setCharacterEncoding(getRequestEncoding());
-        } catch (UnsupportedEncodingException ex) {
-            thisLogger.error("Failed to set charset: " + ExceptionUtils.getRootCauseMessage(ex), ex);
-        }
-        response.setCharacterEncoding(getResponseEncoding());
+
+        SFCorsPolicy cors = getRouteTable().getCorsPolicy();
 
         try {
 
             // Get the current url, excluding what was defined in urlPatterns
             String pathInfo = request.getPathInfo();
+            String httpMethod = request.getHeader(SFCorsPolicy.REQUEST_METHOD);
 
-            Method method;
-
+            SFRoute route;
 
             if (pathInfo != null && pathInfo.length() > 1) {
-
-                // Current url is not empty, then let's split and check if any method
-                // on children class that match the request
-
-                List<String> urlParams = splitParams(pathInfo, "/");
-                method = getMethodToCall(urlParams, request);
-
-
+                route = getRouteMatch(splitParams(pathInfo, "/"), httpMethod).getRoute();
             } else {
-
-                // URL is empty, then let's check if there's an method named index in children class
-                method = getMethodToCall("index");
-
+                route = getRouteTable().getRoute("index");
             }
 
-            checkAllowCors(request, response, method);
+            if (route != null) {
+                cors = route.getCorsPolicy();
+            }
 
+        } catch (NoSuchMethodException ex) {
+            // unknown url, use the policy of the servlet
         } catch (Exception ex) {
-            logger.error("Unhandled Exception", ex);
+            thisLogger.error("Unhandled Exception", ex);
         }
 
+        if (cors != null) {
+            cors.applyPreflight(request, response);
+        }
     }
 
+    /**
+     * Create the container of the request. With recycleContext the container
+     * is reused by the next requests of the thread only if its class declare
+     * clear() (see SFServletContainer.clear), an subclass must override it to
+     * reset its own fields.
+     *
+     * @param request
+     * @param response
+     * @param urlParams
+     * @param out
+     * @param logger
+     * @return
+     */
     protected SFServletContainer newSFServletContainer(HttpServletRequest request, HttpServletResponse response, List<String> urlParams, PrintWriter out, SFLogger logger) {
         return new SFServletContainer(request, response, urlParams, out, logger);
     }
 
+    /**
+     * Get the container of the request, recycled from the context if any
+     *
+     * @param context can be null
+     * @param request
+     * @param response
+     * @param urlParams
+     * @param out
+     * @param logger
+     * @return
+     */
+    protected SFServletContainer obtainSFServletContainer(SFRequestContext context, HttpServletRequest request, HttpServletResponse response, List<String> urlParams, PrintWriter out, SFLogger logger) {
+        if (context == null) {
+            return newSFServletContainer(request, response, urlParams, out, logger);
+        }
+        SFServletContainer container = context.getContainer();
+        if (container == null) {
+            container = newSFServletContainer(request, response, urlParams, out, logger);
+            if (container.isRecyclable()) {
+                context.setContainer(container);
+            }
+        } else {
+            container.recycle(request, response, urlParams, out, logger);
+        }
+        return container;
+    }
+
+    /**
+     * Split the pathInfo, the segments of the context are reused if any
+     *
+     * @param context can be null
+     * @param pathInfo
+     * @return
+     */
+    protected List<String> splitPathInfo(SFRequestContext context, String pathInfo) {
+        if (context == null) {
+            return splitParams(pathInfo, "/");
+        }
+        SFPathSegments segments = context.getSegments();
+        segments.reset(pathInfo, "/");
+        return segments;
+    }
+
 
     /**
      * Main method to proccess the requests
@@ -520,12 +1742,20 @@ public abstract class SFHttpServlet extends HttpServlet {
         }
 
         response.setCharacterEncoding(getResponseEncoding());
-        try (PrintWriter out = response.getWriter()) {
+        SFCompressionResponse compression = newCompressionResponse(request, response);
+        if (compression != null) {
+            response = compression;
+        }
+        PrintWriter out = null;
+        boolean async = false;
+        SFRequestContext context = acquireRequestContext();
+        try {
+            out = new SFResponseWriter(response);
 
             // Get the current url, excluding what was defined in urlPatterns
             String pathInfo = request.getPathInfo();
 
-            Method method;
+            SFRoute route;
 
             try {
 
@@ -536,22 +1766,29 @@ public abstract class SFHttpServlet extends HttpServlet {
                     // Current url is not empty, then let's split and check if any method
                     // on children class that match the request
 
-                    List<String> urlParams = splitParams(pathInfo, "/");
-                    container = newSFServletContainer(request, response, urlParams, out, thisLogger);
-                    method = getMethodToCall(urlParams, request);
+                    List<String> urlParams = splitPathInfo(context, pathInfo);
+                    container = obtainSFServletContainer(context, request, response, urlParams, out, thisLogger);
+                    SFPathMatch match = getRouteMatch(urlParams, request);
+                    container.setPathMatch(match);
+                    route = match.getRoute();
 
                 } else {
 
                     // URL is empty, then let's check if there's an method named index in children class
 
-                    List<String> urlParams = new ArrayList<>();
-                    container = newSFServletContainer(request, response, urlParams, out, thisLogger);
-                    method = getMethodToCall("index");
+                    List<String> urlParams = context != null ? context.getSegments() : new ArrayList<>();
+                    container = obtainSFServletContainer(context, request, response, urlParams, out, thisLogger);
+                    route = getRouteToCall("index");
+
+                }
 
+                if (compression != null && route != null) {
+                    compression.setPolicy(route.getCompressionPolicy());
                 }
 
                 // Call the requested method on children class
-                callDestMethod(thisLogger, out, method, container);
+                callDestMethod(thisLogger, out, route, container);
+                async = container.isAsyncStarted();
 
             } catch (NoSuchMethodException ex) {
                 // In case the method is not found in children class
@@ -564,12 +1801,55 @@ public abstract class SFHttpServlet extends HttpServlet {
                 thisLogger.error(ex.getMessage(), ex);
                 out.println(prepareError(500, "framework_unhandled_exception", "Internal Server Error: " + ExceptionUtils.getRootCauseMessage(ex), CONTENT_TYPE_APPLICATION_JSON, response));
             }
-        } catch (IOException ex) {
-            response.setStatus(500);
-            thisLogger.error("IOException", ex);
         } catch (Exception ex) {
             response.setStatus(500);
             thisLogger.error(ex.getMessage(), ex);
+        } finally {
+            // async responses are closed when the stage complete
+            if (!async) {
+                finishResponse(out, response, thisLogger);
+            }
+            releaseRequestContext(context, async);
+        }
+    }
+
+    /**
+     * Create the response that compress the body, based on the
+     * Accept-Encoding of the request
+     *
+     * @param request
+     * @param response
+     * @return the response or null if the client don't accept gzip or deflate
+     */
+    protected SFCompressionResponse newCompressionResponse(HttpServletRequest request, HttpServletResponse response) {
+        String encoding = SFCompressionResponse.negotiate(request.getHeader("Accept-Encoding"));
+        if (encoding == null) {
+            return null;
+        }
+        return new SFCompressionResponse(response, encoding, getRouteTable().getCompressionPolicy());
+    }
+
+    /**
+     * Close the writer and finish the compression of the response
+     *
+     * @param out can be null
+     * @param response
+     * @param thisLogger
+     */
+    protected void finishResponse(PrintWriter out, HttpServletResponse response, SFLogger thisLogger) {
+        SFCompressionResponse compression = response instanceof SFCompressionResponse ? (SFCompressionResponse) response : null;
+        if (compression != null) {
+            compression.markComplete();
+        }
+        if (out != null) {
+            out.close();
+        }
+        if (compression != null) {
+            try {
+                compression.finish();
+            } catch (IOException ex) {
+                thisLogger.error("Failed to finish the response: " + ExceptionUtils.getRootCauseMessage(ex), ex);
+            }
         }
     }
 
@@ -19,6 +19,7 @@
 package br.com.uiltonsites.servletframework.http;
 
 import br.com.uiltonsites.servletframework.abstracts.SFLifeCycle;
+import br.com.uiltonsites.servletframework.utility.SFDeadline;
 import br.com.uiltonsites.servletframework.utility.SFLogger;
 import br.com.uiltonsites.servletframework.utility.exceptions.SFParameterException;
 import java.io.BufferedReader;
@@ -42,6 +43,7 @@ import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
@@ -122,6 +124,32 @@ public class SFHttpUtil extends SFLifeCycle {
         }
     }
     
+    /**
+     * Limit the timeouts of the request by the deadline of the request
+     * attached to the current thread (see SFDeadline)
+     *
+     * @param request
+     * @param url
+     * @return false if the deadline already passed and the request must not
+     * be sent
+     */
+    protected boolean applyDeadline(HttpRequestBase request, String url) {
+        SFDeadline deadline = SFDeadline.current();
+        if (deadline == null) {
+            return true;
+        }
+        if (deadline.isExpired()) {
+            logger.warn("Request deadline exceeded, not sending to: " + url);
+            return false;
+        }
+        request.setConfig(RequestConfig.copy(requestConfig)
+            .setConnectTimeout(deadline.limit(TIMEOUT))
+            .setConnectionRequestTimeout(deadline.limit(TIMEOUT))
+            .setSocketTimeout(deadline.limit(TIMEOUT))
+            .build());
+        return true;
+    }
+    
     private SFHttpResult parseRawResponse(BufferedReader in) throws IOException {
         SFHttpResult hr = new SFHttpResult();
         String line;
@@ -154,8 +182,16 @@ public class SFHttpUtil extends SFLifeCycle {
         
         OutputStreamWriter osw;
         BufferedReader in;
+        SFDeadline deadline = SFDeadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            logger.warn("Request deadline exceeded, not sending to: " + url);
+            return hr;
+        }
         try {
             socket = new Socket(url, port);
+            if (deadline != null) {
+                socket.setSoTimeout(deadline.limit(0));
+            }
             osw =new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
             in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8")); 
             
@@ -229,6 +265,10 @@ public class SFHttpUtil extends SFLifeCycle {
             
             request.setEntity(httpEntity);
             
+            if (!applyDeadline(request, url)) {
+                return result;
+            }
+            
             response = httpClient.execute(request);
             result.output = EntityUtils.toString(response.getEntity(), encoding);
             result.statusCode = response.getStatusLine().getStatusCode();
@@ -344,6 +384,10 @@ public class SFHttpUtil extends SFLifeCycle {
                 }
             }
             
+            if (!applyDeadline(request, url)) {
+                return result;
+            }
+            
             response = httpClient.execute(request);
             
             result.output = EntityUtils.toString(response.getEntity(), encoding);
@@ -364,12 +408,7 @@ public class SFHttpUtil extends SFLifeCycle {
     }
     
     public static String getRequestParamIsensitive(HttpServletRequest request, String parameter) {
-        for (Map.Entry<String, String[]> entry : request.getParameterMap().entrySet()) {
-            if(entry.getKey().equalsIgnoreCase(parameter)) {
-                return entry.getValue()[0];
-            }
-        }
-        return null;
+        return SFParameterIndex.of(request).getValue(parameter);
     }
 
     /**
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFLogger;
+import br.com.uiltonsites.servletframework.utility.SFThreadSlots;
+import br.com.uiltonsites.servletframework.utility.SFVirtualThreads;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Strategy used to get the instance of the servlet that will receive the call
+ * of an route, created once when the servlet is initialized.
+ *
+ * @see br.com.uiltonsites.servletframework.interfaces.SFInstanceScope
+ */
+public abstract class SFInstanceProvider {
+
+    /**
+     * Get an instance to call the method of the route
+     *
+     * @param thisLogger logger of the request
+     * @return
+     * @throws Exception
+     */
+    public abstract Object acquire(SFLogger thisLogger) throws Exception;
+
+    /**
+     * Called when the method returned, the instance is not used anymore by the
+     * request
+     *
+     * @param instance
+     */
+    public void release(Object instance) {
+    }
+
+    /**
+     * Called when the servlet is destroyed
+     */
+    public void destroy() {
+    }
+
+    /**
+     * Always return the same instance
+     */
+    public static class Singleton extends SFInstanceProvider {
+
+        protected final Object instance;
+
+        public Singleton(Object instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public Object acquire(SFLogger thisLogger) {
+            return instance;
+        }
+
+    }
+
+    /**
+     * Create an new instance on each request, the constructor (SFLogger) is
+     * resolved only once and called by an MethodHandle
+     */
+    public static class PerRequest extends SFInstanceProvider {
+
+        protected final Class<?> clazz;
+        protected final Constructor<?> constructor;
+        protected final MethodHandle handle;
+        protected final NoSuchMethodException notFound;
+
+        public PerRequest(Class<?> clazz) {
+            this.clazz = clazz;
+
+            Constructor<?> c = null;
+            MethodHandle mh = null;
+            NoSuchMethodException ex = null;
+            try {
+                c = clazz.getConstructor(SFLogger.class);
+                mh = MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class, SFLogger.class));
+            } catch (NoSuchMethodException e) {
+                // fail on each request, same as before
+                ex = e;
+            } catch (IllegalAccessException e) {
+                // use reflection
+            }
+            this.constructor = c;
+            this.handle = mh;
+            this.notFound = ex;
+        }
+
+        @Override
+        public Object acquire(SFLogger thisLogger) throws Exception {
+            if (notFound != null) {
+                throw new NoSuchMethodException(notFound.getMessage());
+            }
+            if (handle == null) {
+                return constructor.newInstance(thisLogger);
+            }
+            try {
+                return (Object) handle.invokeExact(thisLogger);
+            } catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+    }
+
+    /**
+     * Each thread reuse its own instance: the instance is taken from the slot
+     * of the thread when acquired and put back in the slot of the thread that
+     * release it, if the slot is empty, otherwise it's discarded. So an
+     * request that is still running (ex: forward or async) never share its
+     * instance, and each thread keep at most one idle instance.<br><br>
+     *
+     * The instance of an thread that died is collected with it, and destroy()
+     * empty the slots of all the threads. Virtual threads don't keep an
+     * instance, each call create an new one.<br><br>
+     *
+     * Before an instance is reused the hook recycleInstance of the servlet is
+     * called, it must clear any state left by the previous request.
+     */
+    public static class PerThread extends SFInstanceProvider {
+
+        protected final SFInstanceProvider factory;
+        protected final SFThreadSlots<Object> slots = new SFThreadSlots<>();
+        protected volatile boolean destroyed;
+
+        /**
+         *
+         * @param factory used to create the instances
+         */
+        public PerThread(SFInstanceProvider factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Object acquire(SFLogger thisLogger) throws Exception {
+            if (SFVirtualThreads.isVirtual(Thread.currentThread())) {
+                return factory.acquire(thisLogger);
+            }
+
+            Object instance = slots.take();
+
+            if (instance != null && !recycle(instance, thisLogger)) {
+                factory.release(instance);
+                instance = null;
+            }
+            if (instance == null) {
+                instance = factory.acquire(thisLogger);
+            }
+            return instance;
+        }
+
+        /**
+         * Prepare an instance to be reused
+         *
+         * @param instance
+         * @param thisLogger
+         * @return false if the instance can't be reused
+         */
+        protected boolean recycle(Object instance, SFLogger thisLogger) {
+            if (instance instanceof SFHttpServlet) {
+                try {
+                    ((SFHttpServlet) instance).recycleInstance(thisLogger);
+                } catch (RuntimeException ex) {
+                    thisLogger.error("Failed to recycle instance, creating an new one", ex);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void release(Object instance) {
+            if (destroyed || instance == null || SFVirtualThreads.isVirtual(Thread.currentThread())) {
+                factory.release(instance);
+                return;
+            }
+
+            // async requests are released by another thread, the instance
+            // is kept by that thread
+            if (!slots.offer(instance)) {
+                factory.release(instance);
+            } else if (destroyed && slots.take() == instance) {
+                // destroyed while releasing
+                factory.release(instance);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            // the threads of the container outlive the servlet, don't keep the
+            // instances in any thread
+            destroyed = true;
+            for (Object instance : slots.clear()) {
+                factory.release(instance);
+            }
+            factory.destroy();
+        }
+
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * Strategy used to call the method of an route, created once when the route
+ * table is built.<br><br>
+ *
+ * Exceptions thrown by the method are wrapped in an InvocationTargetException
+ * and arguments of the wrong type throw IllegalArgumentException, same as
+ * {@link Method#invoke(Object, Object...)}.
+ *
+ */
+public abstract class SFMethodInvoker {
+
+    protected static final int MAX_LAMBDA_ARITY = 6;
+
+    protected final Method method;
+    protected final Class<?>[] parameterTypes;
+    // the parameter types with the primitives boxed
+    protected final Class<?>[] argTypes;
+
+    protected SFMethodInvoker(Method method) {
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+        this.argTypes = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            argTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        }
+    }
+
+    /**
+     * Call the method
+     *
+     * @param instance the instance of the servlet, ignored if the method is static
+     * @param args the value of each parameter
+     * @return the return of the method, null if void
+     * @throws Exception
+     */
+    public abstract Object invoke(Object instance, List<Object> args) throws Exception;
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Return true if the instance and the arguments can be passed to the
+     * method without conversion, otherwise the call must be made by
+     * {@link Method#invoke(Object, Object...)} that do the widening of
+     * primitives and throw the same exceptions as before
+     *
+     * @param instance
+     * @param args
+     * @return
+     */
+    protected boolean isExactCall(Object instance, List<Object> args) {
+        if (args.size() != argTypes.length) {
+            return false;
+        }
+        if (!Modifier.isStatic(method.getModifiers()) && !method.getDeclaringClass().isInstance(instance)) {
+            return false;
+        }
+        for (int i = 0; i < argTypes.length; i++) {
+            Object arg = args.get(i);
+            if (arg == null ? parameterTypes[i].isPrimitive() : !argTypes[i].isInstance(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create an invoker backed by an class spun by LambdaMetafactory, so the
+     * JIT see an direct call to the method. Fall back to an MethodHandle
+     * (static methods, more than 6 parameters or classes not visible to the
+     * framework) or to reflection if the method can't be accessed
+     *
+     * @param method
+     * @return
+     */
+    public static SFMethodInvoker create(Method method) {
+        try {
+            if (Lambda.isSupported(method)) {
+                return new Lambda(method);
+            }
+            return new Handle(method);
+        } catch (IllegalAccessException ex) {
+            return new Reflective(method);
+        }
+    }
+
+    /**
+     * Invoker that use {@link Method#invoke(Object, Object...)}
+     */
+    public static class Reflective extends SFMethodInvoker {
+
+        public Reflective(Method method) {
+            super(method);
+        }
+
+        @Override
+        public Object invoke(Object instance, List<Object> args) throws Exception {
+            return method.invoke(instance, args.toArray());
+        }
+
+    }
+
+    /**
+     * Invoker that use an MethodHandle adapted to (Object, Object...)Object,
+     * the methods with up to 6 parameters are called without creating an
+     * array for the arguments. The handle is not constant for the JIT, so the
+     * method is not inlined in the caller
+     */
+    public static class Handle extends SFMethodInvoker {
+
+        protected final MethodHandle handle;
+        protected final int arity;
+
+        public Handle(Method method) throws IllegalAccessException {
+            super(method);
+            this.arity = method.getParameterCount();
+
+            MethodHandle mh = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                mh = MethodHandles.dropArguments(mh, 0, Object.class);
+            }
+            mh = mh.asType(MethodType.genericMethodType(arity + 1));
+            if (arity > 6) {
+                mh = mh.asSpreader(Object[].class, arity);
+            }
+            this.handle = mh;
+        }
+
+        @Override
+        public Object invoke(Object instance, List<Object> args) throws Exception {
+            if (!isExactCall(instance, args)) {
+                return method.invoke(instance, args.toArray());
+            }
+            try {
+                switch (arity) {
+                    case 0:
+                        return (Object) handle.invokeExact(instance);
+                    case 1:
+                        return (Object) handle.invokeExact(instance, args.get(0));
+                    case 2:
+                        return (Object) handle.invokeExact(instance, args.get(0), args.get(1));
+                    case 3:
+                        return (Object) handle.invokeExact(instance, args.get(0), args.get(1), args.get(2));
+                    case 4:
+                        return (Object) handle.invokeExact(instance, args.get(0), args.get(1), args.get(2), args.get(3));
+                    case 5:
+                        return (Object) handle.invokeExact(instance, args.get(0), args.get(1), args.get(2), args.get(3), args.get(4));
+                    case 6:
+                        return (Object) handle.invokeExact(instance, args.get(0), args.get(1), args.get(2), args.get(3), args.get(4), args.get(5));
+                    default:
+                        return (Object) handle.invokeExact(instance, args.toArray());
+                }
+            } catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+    }
+
+    /**
+     * Invoker that call the method through an functional interface
+     * implemented by LambdaMetafactory for this method only. The call of the
+     * interface is megamorphic (one class per route) but the class call the
+     * method directly, so the JIT can inline the method in it.
+     */
+    public static class Lambda extends SFMethodInvoker {
+
+        public interface Call0 { Object call(Object instance) throws Throwable; }
+        public interface Call1 { Object call(Object instance, Object a0) throws Throwable; }
+        public interface Call2 { Object call(Object instance, Object a0, Object a1) throws Throwable; }
+        public interface Call3 { Object call(Object instance, Object a0, Object a1, Object a2) throws Throwable; }
+        public interface Call4 { Object call(Object instance, Object a0, Object a1, Object a2, Object a3) throws Throwable; }
+        public interface Call5 { Object call(Object instance, Object a0, Object a1, Object a2, Object a3, Object a4) throws Throwable; }
+        public interface Call6 { Object call(Object instance, Object a0, Object a1, Object a2, Object a3, Object a4, Object a5) throws Throwable; }
+
+        // the implementation must return void if the method is void
+        public interface VoidCall0 { void call(Object instance) throws Throwable; }
+        public interface VoidCall1 { void call(Object instance, Object a0) throws Throwable; }
+        public interface VoidCall2 { void call(Object instance, Object a0, Object a1) throws Throwable; }
+        public interface VoidCall3 { void call(Object instance, Object a0, Object a1, Object a2) throws Throwable; }
+        public interface VoidCall4 { void call(Object instance, Object a0, Object a1, Object a2, Object a3) throws Throwable; }
+        public interface VoidCall5 { void call(Object instance, Object a0, Object a1, Object a2, Object a3, Object a4) throws Throwable; }
+        public interface VoidCall6 { void call(Object instance, Object a0, Object a1, Object a2, Object a3, Object a4, Object a5) throws Throwable; }
+
+        protected static final Class<?>[] CALLS = {Call0.class, Call1.class, Call2.class, Call3.class, Call4.class, Call5.class, Call6.class};
+        protected static final Class<?>[] VOID_CALLS = {VoidCall0.class, VoidCall1.class, VoidCall2.class, VoidCall3.class, VoidCall4.class, VoidCall5.class, VoidCall6.class};
+
+        protected final Object call;
+        protected final int arity;
+        protected final boolean isVoid;
+
+        public Lambda(Method method) throws IllegalAccessException {
+            super(method);
+            this.arity = method.getParameterCount();
+            this.isVoid = method.getReturnType() == void.class;
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle impl = lookup.unreflect(method);
+            Class<?> type = (isVoid ? VOID_CALLS : CALLS)[arity];
+            MethodType sam = MethodType.genericMethodType(arity + 1);
+            // the arguments are cast to the types of the method (primitives
+            // are unboxed) by the generated class
+            MethodType instantiated = impl.type().wrap();
+            if (isVoid) {
+                sam = sam.changeReturnType(void.class);
+                instantiated = instantiated.changeReturnType(void.class);
+            }
+            try {
+                this.call = LambdaMetafactory.metafactory(lookup, "call", MethodType.methodType(type), sam, impl, instantiated).getTarget().invoke();
+            } catch (Throwable ex) {
+                IllegalAccessException iae = new IllegalAccessException("Failed to create the invoker of " + method);
+                iae.initCause(ex);
+                throw iae;
+            }
+        }
+
+        /**
+         * Return true if an Lambda invoker can be created for the method:
+         * not static, up to 6 parameters and all the types visible to the
+         * classloader of the framework (the generated class is defined in it)
+         *
+         * @param method
+         * @return
+         */
+        public static boolean isSupported(Method method) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() > MAX_LAMBDA_ARITY) {
+                return false;
+            }
+            if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                return false;
+            }
+            if (!isVisible(method.getDeclaringClass()) || !isVisible(method.getReturnType())) {
+                return false;
+            }
+            for (Class<?> type : method.getParameterTypes()) {
+                if (!isVisible(type)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isVisible(Class<?> type) {
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (type.isPrimitive()) {
+                return true;
+            }
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+            try {
+                return Class.forName(type.getName(), false, SFMethodInvoker.class.getClassLoader()) == type;
+            } catch (ClassNotFoundException | LinkageError ex) {
+                return false;
+            }
+        }
+
+        @Override
+        public Object invoke(Object instance, List<Object> args) throws Exception {
+            if (!isExactCall(instance, args)) {
+                return method.invoke(instance, args.toArray());
+            }
+            try {
+                if (isVoid) {
+                    invokeVoid(instance, args);
+                    return null;
+                }
+                switch (arity) {
+                    case 0:
+                        return ((Call0) call).call(instance);
+                    case 1:
+                        return ((Call1) call).call(instance, args.get(0));
+                    case 2:
+                        return ((Call2) call).call(instance, args.get(0), args.get(1));
+                    case 3:
+                        return ((Call3) call).call(instance, args.get(0), args.get(1), args.get(2));
+                    case 4:
+                        return ((Call4) call).call(instance, args.get(0), args.get(1), args.get(2), args.get(3));
+                    case 5:
+                        return ((Call5) call).call(instance, args.get(0), args.get(1), args.get(2), args.get(3), args.get(4));
+                    default:
+                        return ((Call6) call).call(instance, args.get(0), args.get(1), args.get(2), args.get(3), args.get(4), args.get(5));
+                }
+            } catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+
+        private void invokeVoid(Object instance, List<Object> args) throws Throwable {
+            switch (arity) {
+                case 0:
+                    ((VoidCall0) call).call(instance);
+                    break;
+                case 1:
+                    ((VoidCall1) call).call(instance, args.get(0));
+                    break;
+                case 2:
+                    ((VoidCall2) call).call(instance, args.get(0), args.get(1));
+                    break;
+                case 3:
+                    ((VoidCall3) call).call(instance, args.get(0), args.get(1), args.get(2));
+                    break;
+                case 4:
+                    ((VoidCall4) call).call(instance, args.get(0), args.get(1), args.get(2), args.get(3));
+                    break;
+                case 5:
+                    ((VoidCall5) call).call(instance, args.get(0), args.get(1), args.get(2), args.get(3), args.get(4));
+                    break;
+                default:
+                    ((VoidCall6) call).call(instance, args.get(0), args.get(1), args.get(2), args.get(3), args.get(4), args.get(5));
+                    break;
+            }
+        }
+
+    }
+
+}
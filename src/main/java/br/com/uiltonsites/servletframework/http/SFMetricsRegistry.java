@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of all the routes called in the JVM, read by SFStatsServlet
+ *
+ */
+public final class SFMetricsRegistry {
+
+    private static final ConcurrentMap<String, SFRouteMetrics> ROUTES = new ConcurrentHashMap<>();
+
+    private SFMetricsRegistry() {
+    }
+
+    /**
+     * Get (or create) the metrics of an route
+     *
+     * @param name
+     * @return
+     */
+    public static SFRouteMetrics getRouteMetrics(String name) {
+        SFRouteMetrics metrics = ROUTES.get(name);
+        if (metrics == null) {
+            metrics = ROUTES.computeIfAbsent(name, SFRouteMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * Get the metrics of all routes, sorted by name
+     *
+     * @return
+     */
+    public static List<SFRouteMetrics> getAll() {
+        List<SFRouteMetrics> list = new ArrayList<>(ROUTES.values());
+        Collections.sort(list, Comparator.comparing(SFRouteMetrics::getName));
+        return list;
+    }
+
+    /**
+     * Remove all metrics
+     */
+    public static void clear() {
+        ROUTES.clear();
+    }
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFParamConverter;
+import br.com.uiltonsites.servletframework.interfaces.SFWebMethod;
+import br.com.uiltonsites.servletframework.utility.SFLogger;
+import br.com.uiltonsites.servletframework.utility.SFMsisdn;
+import br.com.uiltonsites.servletframework.utility.SFParamConverters;
+import br.com.uiltonsites.servletframework.utility.exceptions.SFParseParameterException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Parameter;
+import java.nio.file.Path;
+import javax.servlet.ServletException;
+import javax.servlet.http.Part;
+
+/**
+ * Know how to get the value of one parameter of an route from the request,
+ * the annotations of the parameter are read only once when the route is
+ * built.
+ *
+ */
+public abstract class SFParamBinder {
+
+    /**
+     * Returned by {@link #bind} when the value of the parameter was not
+     * recognized, the servlet will call parseUnrecognizedParameter
+     */
+    public static final Object UNRECOGNIZED = new Object();
+
+    protected final Parameter parameter;
+    protected final Class<?> type;
+
+    protected SFParamBinder(Parameter parameter) {
+        this.parameter = parameter;
+        this.type = parameter.getType();
+    }
+
+    /**
+     * Get the value of the parameter
+     *
+     * @param container
+     * @param pathMatch the path variables of the request, null if the url
+     * don't match the pathVars of the route
+     * @param logger
+     * @return the value or {@link #UNRECOGNIZED}
+     * @throws SFParseParameterException
+     */
+    public abstract Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) throws SFParseParameterException;
+
+    /**
+     * Return true if this parameter is read from the path variables
+     *
+     * @return
+     */
+    public boolean isPathBound() {
+        return false;
+    }
+
+    public Parameter getParameter() {
+        return parameter;
+    }
+
+    /**
+     * Create the binders of all parameters of an method
+     *
+     * @param webMethod can be null
+     * @param pathTemplate can be null
+     * @param parameters
+     * @return
+     */
+    public static SFParamBinder[] compile(SFWebMethod webMethod, SFPathTemplate pathTemplate, Parameter[] parameters) {
+        SFParamBinder[] binders = new SFParamBinder[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            binders[i] = compile(webMethod, pathTemplate, parameters[i]);
+        }
+        return binders;
+    }
+
+    /**
+     * Create the binder of one parameter
+     *
+     * @param webMethod can be null
+     * @param pathTemplate can be null
+     * @param p
+     * @return
+     */
+    public static SFParamBinder compile(SFWebMethod webMethod, SFPathTemplate pathTemplate, Parameter p) {
+
+        if (SFServletContainer.class.isAssignableFrom(p.getType())) {
+            return new ContainerBinder(p);
+        }
+
+        SFUploadParam aup = p.getAnnotation(SFUploadParam.class);
+        if (aup != null) {
+            return new UploadBinder(p, aup.name(), aup.required(), SFUploadReceiver.create(aup));
+        }
+
+        SFRequestParam arp = p.getAnnotation(SFRequestParam.class);
+        if (arp != null) {
+            String defaultValue = arp.default_value().equals(SFRequestParam.NULL_VALUE) ? null : arp.default_value();
+            if (SFMsisdn.class.isAssignableFrom(p.getType())) {
+                return new MsisdnBinder(p, arp.name(), arp.required(), defaultValue);
+            }
+            return new RequestParamBinder(p, arp.name(), arp.required(), defaultValue);
+        }
+
+        if (webMethod != null && !webMethod.pathVars().equals(SFWebMethod.defaultPathVars)) {
+            SFPathParam app = p.getAnnotation(SFPathParam.class);
+            if (app != null) {
+                if (pathTemplate == null) {
+                    pathTemplate = SFPathUrlParser.compile(webMethod.pathVars());
+                }
+                int index = pathTemplate.indexOf(app.name());
+                if (index >= 0) {
+                    String defaultValue = app.default_value().equals(SFPathParam.NULL_VALUE) ? null : app.default_value();
+                    return new PathParamBinder(p, app.name(), app.required(), defaultValue, index);
+                }
+            }
+        }
+
+        return new UnrecognizedBinder(p);
+    }
+
+    /**
+     * Resolve the converter of the type and convert the default value only
+     * once, in case of an type without converter the value is cast on each
+     * request (and fail), as before
+     */
+    protected static abstract class ValueBinder extends SFParamBinder {
+
+        protected final String name;
+        protected final boolean required;
+        protected final String defaultString;
+        protected final SFParamConverter<?> converter;
+        protected final Object defaultValue;
+        protected final boolean defaultConverted;
+
+        protected ValueBinder(Parameter parameter, String name, boolean required, String defaultString) {
+            super(parameter);
+            this.name = name;
+            this.required = required;
+            this.defaultString = defaultString;
+            this.converter = SFParamConverters.get(type);
+
+            Object converted = null;
+            boolean ok;
+            try {
+                converted = convert(defaultString);
+                ok = true;
+            } catch (RuntimeException ex) {
+                ok = false;
+            }
+            if (converted == null) {
+                // primitive types can't receive null
+                converted = SFParamConverters.primitiveDefault(type);
+            }
+            this.defaultValue = converted;
+            this.defaultConverted = ok;
+        }
+
+        /**
+         * Convert an value to the type of the parameter
+         *
+         * @param value
+         * @return the converted value, or null if the value is null or invalid
+         */
+        protected Object convert(String value) {
+            if (value == null) {
+                return null;
+            }
+            if (converter == null) {
+                return type.cast(value);
+            }
+            return converter.convert(value);
+        }
+
+        protected Object getDefaultValue() {
+            return defaultConverted ? defaultValue : convert(defaultString);
+        }
+    }
+
+    /**
+     * Parameter of type SFServletContainer
+     */
+    public static class ContainerBinder extends SFParamBinder {
+
+        public ContainerBinder(Parameter parameter) {
+            super(parameter);
+        }
+
+        @Override
+        public Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) {
+            return container;
+        }
+    }
+
+    /**
+     * Parameter annotated with SFRequestParam
+     */
+    public static class RequestParamBinder extends ValueBinder {
+
+        public RequestParamBinder(Parameter parameter, String name, boolean required, String defaultString) {
+            super(parameter, name, required, defaultString);
+        }
+
+        @Override
+        public Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) throws SFParseParameterException {
+
+            Object paramValue;
+            if (type.isArray()) {
+                String[] values = container.getRequest().getParameterValues(name);
+                paramValue = values == null ? null : values.length == 1 ? convert(values[0]) : SFParamConverters.convertArray(values, type);
+            } else {
+                paramValue = convert(container.getParameter(name));
+            }
+
+            if (paramValue == null) {
+                if (required) {
+                    throw new SFParseParameterException("Required parameter was not found or have an invalid value: " + name);
+                }
+                return getDefaultValue();
+            }
+
+            // trim & check if value is empty (in case of string)
+            if (paramValue instanceof String) {
+                String val = ((String) paramValue).trim();
+                if (val.isEmpty() && required) {
+                    throw new SFParseParameterException("Required parameter was not found or have an invalid value: " + name);
+                }
+                return val;
+            }
+
+            return paramValue;
+        }
+    }
+
+    /**
+     * Parameter of type SFMsisdn annotated with SFRequestParam
+     */
+    public static class MsisdnBinder extends SFParamBinder {
+
+        protected final String name;
+        protected final boolean required;
+        protected final String defaultString;
+
+        public MsisdnBinder(Parameter parameter, String name, boolean required, String defaultString) {
+            super(parameter);
+            this.name = name;
+            this.required = required;
+            this.defaultString = defaultString;
+        }
+
+        @Override
+        public Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) throws SFParseParameterException {
+
+            Long paramValue = container.getParameterLong(name, null);
+            if (paramValue == null && required) {
+                throw new SFParseParameterException("Required parameter was not found or have an invalid value: " + name);
+            }
+
+            SFMsisdn msisdn;
+            if (paramValue == null && defaultString != null) {
+                msisdn = new SFMsisdn(defaultString, logger);
+            } else {
+                msisdn = new SFMsisdn(paramValue, logger);
+            }
+
+            if (!msisdn.isValid() && required) {
+                throw new SFParseParameterException("framework_invalid_msisdn", "Received an invalid msisdn on parameter: " + name);
+            }
+            return msisdn;
+        }
+    }
+
+    /**
+     * Parameter annotated with SFPathParam, the index of the variable in the
+     * pathVars template is resolved when the route is built
+     */
+    public static class PathParamBinder extends ValueBinder {
+
+        protected final int index;
+
+        public PathParamBinder(Parameter parameter, String name, boolean required, String defaultString, int index) {
+            super(parameter, name, required, defaultString);
+            this.index = index;
+        }
+
+        @Override
+        public boolean isPathBound() {
+            return true;
+        }
+
+        @Override
+        public Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) throws SFParseParameterException {
+
+            if (pathMatch == null) {
+                return UNRECOGNIZED;
+            }
+
+            Object value = convert(pathMatch.getValue(index));
+
+            if (value == null) {
+                if (required) {
+                    throw new SFParseParameterException("Required path parameter was not found or have an invalid value: " + name);
+                }
+                return getDefaultValue();
+            }
+
+            if (value instanceof String) {
+                String val = ((String) value).trim();
+                if (val.isEmpty() && required) {
+                    throw new SFParseParameterException("Required path parameter was not found or have an invalid value: " + name);
+                }
+                return val;
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Parameter annotated with SFUploadParam, of type SFUpload, Path, File or
+     * Part
+     */
+    public static class UploadBinder extends SFParamBinder {
+
+        protected final String name;
+        protected final boolean required;
+        protected final SFUploadReceiver receiver;
+
+        public UploadBinder(Parameter parameter, String name, boolean required, SFUploadReceiver receiver) {
+            super(parameter);
+            this.name = name;
+            this.required = required;
+            this.receiver = receiver;
+
+            if (type != SFUpload.class && type != Path.class && type != File.class && type != Part.class) {
+                throw new IllegalArgumentException("SFUploadParam " + name + " must be of type SFUpload, Path, File or Part");
+            }
+            if (receiver.getConsumer() != null && type != SFUpload.class) {
+                throw new IllegalArgumentException("SFUploadParam " + name + " with an consumer must be of type SFUpload");
+            }
+        }
+
+        @Override
+        public Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) throws SFParseParameterException {
+
+            Part part;
+            try {
+                part = container.getRequest().getPart(name);
+            } catch (IOException | ServletException | IllegalStateException ex) {
+                throw new SFParseParameterException("framework_invalid_upload", "Failed to read the upload " + name + ": " + ex.getMessage());
+            }
+
+            if (part == null) {
+                if (required) {
+                    throw new SFParseParameterException("Required upload was not found: " + name);
+                }
+                return null;
+            }
+
+            if (type == Part.class) {
+                receiver.checkSize(part);
+                return part;
+            }
+
+            SFUpload upload;
+            try {
+                upload = receiver.receive(part);
+            } catch (IOException ex) {
+                throw new SFParseParameterException("framework_invalid_upload", "Failed to receive the upload " + name + ": " + ex.getMessage());
+            }
+            // deleted if the method is not called
+            container.addUpload(upload);
+
+            if (type == Path.class) {
+                return upload.getPath();
+            } else if (type == File.class) {
+                return upload.getFile();
+            }
+            return upload;
+        }
+    }
+
+    /**
+     * Parameter that the framework don't know how to fill
+     */
+    public static class UnrecognizedBinder extends SFParamBinder {
+
+        public UnrecognizedBinder(Parameter parameter) {
+            super(parameter);
+        }
+
+        @Override
+        public Object bind(SFServletContainer container, SFPathMatch pathMatch, SFLogger logger) {
+            return UNRECOGNIZED;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Index of the parameters of an request by the case-folded name, built once
+ * per request and stored as attribute of the request, so the case-insensitive
+ * lookups don't need to iterate the parameter map.<br><br>
+ *
+ * When more than one parameter have the same name ignoring case the first one
+ * of the parameter map wins, same as iterating the map.<br><br>
+ *
+ * The index is only rebuilt when the dispatcher type of the request changes
+ * (forward, include, async or error dispatch), some containers (Jetty,
+ * Undertow) return an new parameter map on each call so the map itself can't
+ * be compared.
+ *
+ */
+public class SFParameterIndex {
+
+    protected static final String ATTRIBUTE = SFParameterIndex.class.getName();
+
+    protected final DispatcherType dispatcherType;
+    protected final Map<String, String[]> index;
+
+    public SFParameterIndex(Map<String, String[]> source) {
+        this(source, DispatcherType.REQUEST);
+    }
+
+    /**
+     * @param source the parameter map
+     * @param dispatcherType the dispatcher type of the request when the map
+     * was read
+     */
+    public SFParameterIndex(Map<String, String[]> source, DispatcherType dispatcherType) {
+        this.dispatcherType = dispatcherType;
+        this.index = new HashMap<>(source.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String[]> entry : source.entrySet()) {
+            index.putIfAbsent(fold(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * Get the index of the request, the index is rebuilt if the request was
+     * dispatched again (ex: after an forward with a query string)
+     *
+     * @param request
+     * @return
+     */
+    public static SFParameterIndex of(HttpServletRequest request) {
+        Object attribute = request.getAttribute(ATTRIBUTE);
+        if (attribute instanceof SFParameterIndex && ((SFParameterIndex) attribute).isIndexOf(request)) {
+            return (SFParameterIndex) attribute;
+        }
+        SFParameterIndex index = new SFParameterIndex(request.getParameterMap(), request.getDispatcherType());
+        request.setAttribute(ATTRIBUTE, index);
+        return index;
+    }
+
+    /**
+     * Fold the case of an name, two names have the same folded value only
+     * if they are equalsIgnoreCase (folded char by char, so "ß" is not equal
+     * to "ss")
+     *
+     * @param name
+     * @return
+     */
+    public static String fold(String name) {
+        char[] chars = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            char folded = Character.toLowerCase(Character.toUpperCase(c));
+            if (folded != c) {
+                if (chars == null) {
+                    chars = name.toCharArray();
+                }
+                chars[i] = folded;
+            }
+        }
+        return chars == null ? name : new String(chars);
+    }
+
+    /**
+     * Return true if the index is still valid for the request, without
+     * reading the parameter map
+     *
+     * @param request
+     * @return
+     */
+    public boolean isIndexOf(HttpServletRequest request) {
+        return request.getDispatcherType() == dispatcherType;
+    }
+
+    /**
+     * Get all the values of an parameter, ignoring the case of the name
+     *
+     * @param name
+     * @return the values or null if not found
+     */
+    public String[] getValues(String name) {
+        return name == null ? null : index.get(fold(name));
+    }
+
+    /**
+     * Get the first value of an parameter, ignoring the case of the name
+     *
+     * @param name
+     * @return the value or null if not found
+     */
+    public String getValue(String name) {
+        String[] values = getValues(name);
+        return values == null || values.length == 0 ? null : values[0];
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+}
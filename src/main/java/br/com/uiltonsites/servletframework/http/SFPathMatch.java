@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of an url matched against an route, with the captured path variables
+ * stored by index (the order they appear in the pathVars template), so the
+ * parameters can be bound without matching the url again.
+ *
+ */
+public class SFPathMatch {
+
+    protected static final String[] NO_VALUES = new String[0];
+
+    protected SFRoute route;
+    protected String[] vars;
+    protected String[] values;
+    protected int size;
+
+    public SFPathMatch(int capacity) {
+        this.values = capacity == 0 ? NO_VALUES : new String[capacity];
+    }
+
+    /**
+     * Create an match without path variables
+     *
+     * @param route
+     */
+    public SFPathMatch(SFRoute route) {
+        this.values = NO_VALUES;
+        this.vars = NO_VALUES;
+        this.route = route;
+    }
+
+    void set(SFRoute route, String[] vars, int size) {
+        this.route = route;
+        this.vars = vars;
+        this.size = size;
+    }
+
+    void copy(SFRoute route, String[] vars, String[] captures, int size) {
+        if (values.length < size) {
+            values = new String[captures.length];
+        }
+        System.arraycopy(captures, 0, values, 0, size);
+        set(route, vars, size);
+    }
+
+    /**
+     * Get the matched route, null when matched directly against an template
+     *
+     * @return
+     */
+    public SFRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * Number of captured variables
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getVar(int index) {
+        return vars[index];
+    }
+
+    public String getValue(int index) {
+        return index >= 0 && index < size ? values[index] : null;
+    }
+
+    /**
+     * Get the index of the first variable with the specified name
+     *
+     * @param var
+     * @return the index or -1 if not found
+     */
+    public int indexOf(String var) {
+        for (int i = 0; i < size; i++) {
+            if (vars[i].equals(var)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the value of the first variable with the specified name
+     *
+     * @param var
+     * @return the value or null if not found
+     */
+    public String getValue(String var) {
+        return getValue(indexOf(var));
+    }
+
+    /**
+     * Convert the captured variables to the format returned by
+     * SFPathUrlParser.parse
+     *
+     * @return
+     */
+    public List<SFPathValue> toPathValues() {
+        List<SFPathValue> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new SFPathValue(vars[i], values[i]));
+        }
+        return list;
+    }
+
+}
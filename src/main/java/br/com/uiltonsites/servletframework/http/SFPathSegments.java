@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Segments of the pathInfo of an request, stored as offsets in the original
+ * string. The substring of an segment is only created when it is read (and
+ * then kept until the next reset), the route matching compare the segments
+ * in place (length, regionEquals, hash) and only create the substrings of the
+ * variables. The arrays are reused by the next request when the list is
+ * recycled.<br><br>
+ *
+ * Split the same way as SFHttpServlet.splitParams: the text before the first
+ * delimiter is ignored and an url ending with the delimiter have an empty
+ * last segment.
+ *
+ */
+public class SFPathSegments extends AbstractList<String> implements RandomAccess {
+
+    protected String path;
+    protected int[] starts = new int[8];
+    protected int[] ends = new int[8];
+    protected String[] values = new String[8];
+    protected int first;
+    protected int size;
+
+    public SFPathSegments() {
+    }
+
+    public SFPathSegments(String path, String delim) {
+        reset(path, delim);
+    }
+
+    /**
+     * Split an new path, discarding the segments of the previous one
+     *
+     * @param path
+     * @param delim
+     */
+    public void reset(String path, String delim) {
+        clear();
+        this.path = path;
+        int offset = 0;
+        while (true) {
+            int index = path.indexOf(delim, offset);
+            if (index == -1) {
+                add(offset, path.length());
+                return;
+            }
+            if (offset > 0) {
+                add(offset, index);
+            }
+            offset = index + delim.length();
+        }
+    }
+
+    private void add(int start, int end) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size - first) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return first + index;
+    }
+
+    @Override
+    public String get(int index) {
+        int i = checkIndex(index);
+        String value = values[i];
+        if (value == null) {
+            value = path.substring(starts[i], ends[i]);
+            values[i] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Get the length of an segment without creating the substring
+     *
+     * @param index
+     * @return
+     */
+    public int length(int index) {
+        int i = checkIndex(index);
+        return ends[i] - starts[i];
+    }
+
+    /**
+     * Return true if the segment is equal to the string, without creating
+     * the substring
+     *
+     * @param index
+     * @param s
+     * @return
+     */
+    public boolean regionEquals(int index, String s) {
+        int i = checkIndex(index);
+        int length = ends[i] - starts[i];
+        return length == s.length() && path.regionMatches(starts[i], s, 0, length);
+    }
+
+    /**
+     * Return true if the segment starts with the prefix and ends with the
+     * suffix, without overlapping them
+     *
+     * @param index
+     * @param prefix
+     * @param suffix
+     * @return
+     */
+    public boolean matches(int index, String prefix, String suffix) {
+        int i = checkIndex(index);
+        return ends[i] - starts[i] >= prefix.length() + suffix.length()
+                && path.startsWith(prefix, starts[i])
+                && path.startsWith(suffix, ends[i] - suffix.length());
+    }
+
+    /**
+     * Get the hash code of the segment, equal to get(index).hashCode(),
+     * without creating the substring
+     *
+     * @param index
+     * @return
+     */
+    public int hash(int index) {
+        int i = checkIndex(index);
+        if (values[i] != null) {
+            return values[i].hashCode();
+        }
+        int h = 0;
+        for (int c = starts[i]; c < ends[i]; c++) {
+            h = 31 * h + path.charAt(c);
+        }
+        return h;
+    }
+
+    /**
+     * Get part of an segment, same as get(index).substring(begin, end)
+     *
+     * @param index
+     * @param begin
+     * @param end
+     * @return
+     */
+    public String substring(int index, int begin, int end) {
+        int i = checkIndex(index);
+        if (begin < 0 || end > ends[i] - starts[i] || begin > end) {
+            throw new IndexOutOfBoundsException("begin " + begin + ", end " + end + ", length " + (ends[i] - starts[i]));
+        }
+        return path.substring(starts[i] + begin, starts[i] + end);
+    }
+
+    @Override
+    public int size() {
+        return size - first;
+    }
+
+    @Override
+    public String remove(int index) {
+        String value = get(index);
+        if (index == 0) {
+            // the name of the method is removed before matching the route
+            first++;
+        } else {
+            int i = first + index;
+            int moved = size - i - 1;
+            System.arraycopy(starts, i + 1, starts, i, moved);
+            System.arraycopy(ends, i + 1, ends, i, moved);
+            System.arraycopy(values, i + 1, values, i, moved);
+            size--;
+            values[size] = null;
+        }
+        modCount++;
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, 0, size, null);
+        path = null;
+        first = 0;
+        size = 0;
+        modCount++;
+    }
+
+}
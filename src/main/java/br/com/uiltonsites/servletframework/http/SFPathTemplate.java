@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An pathVars template of SFWebMethod (ex: "user/{id}/photo_{name}.jpg")
+ * compiled only once.<br><br>
+ *
+ * Each segment is a literal or a variable with an optional prefix and suffix,
+ * an empty literal segment match anything.
+ *
+ */
+public class SFPathTemplate {
+
+    public static class Segment {
+
+        public final String prefix;
+        public final String suffix;
+        public final String var;
+
+        public Segment(String prefix, String suffix, String var) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.var = var;
+        }
+
+        public boolean isVar() {
+            return var != null;
+        }
+
+        /**
+         * Return true if the url segment match this template segment
+         *
+         * @param s
+         * @return
+         */
+        public boolean matches(String s) {
+            if (var == null) {
+                return prefix.isEmpty() || s.equals(prefix);
+            }
+            return s.length() >= prefix.length() + suffix.length() && s.startsWith(prefix) && s.endsWith(suffix);
+        }
+
+        /**
+         * Same as matches(segments.get(index)), without creating the
+         * substring
+         *
+         * @param segments
+         * @param index
+         * @return
+         */
+        public boolean matches(SFPathSegments segments, int index) {
+            if (var == null) {
+                return prefix.isEmpty() || segments.regionEquals(index, prefix);
+            }
+            return segments.matches(index, prefix, suffix);
+        }
+
+        /**
+         * Extract the value of the variable from an url segment that match
+         * this template segment
+         *
+         * @param s
+         * @return
+         */
+        public String extract(String s) {
+            return s.substring(prefix.length(), s.length() - suffix.length());
+        }
+
+        /**
+         * Same as extract(segments.get(index)), only the value is created
+         *
+         * @param segments
+         * @param index
+         * @return
+         */
+        public String extract(SFPathSegments segments, int index) {
+            return segments.substring(index, prefix.length(), segments.length(index) - suffix.length());
+        }
+
+        /**
+         * Return true if both segments match exactly the same url segments
+         *
+         * @param o
+         * @return
+         */
+        public boolean sameShape(Segment o) {
+            return (var == null) == (o.var == null) && prefix.equals(o.prefix) && suffix.equals(o.suffix);
+        }
+    }
+
+    protected final String template;
+    protected final Segment[] segments;
+    protected final String[] vars;
+    protected final boolean matchable;
+
+    protected SFPathTemplate(String template, Segment[] segments, String[] vars, boolean matchable) {
+        this.template = template;
+        this.segments = segments;
+        this.vars = vars;
+        this.matchable = matchable;
+    }
+
+    /**
+     * Compile an pathVars template
+     *
+     * @param pathTemplate
+     * @return
+     */
+    public static SFPathTemplate compile(String pathTemplate) {
+        String t = pathTemplate.startsWith("/") ? pathTemplate.substring(1) : pathTemplate;
+
+        List<Segment> segments = new ArrayList<>();
+        List<String> vars = new ArrayList<>();
+
+        if (!t.isEmpty()) {
+            for (String s : t.split("/")) {
+                if (s.contains("{") && s.contains("}")) {
+                    String var = s.substring(s.indexOf("{") + 1, s.indexOf("}"));
+                    String prefix = s.substring(0, s.indexOf("{"));
+                    String suffix = s.substring(s.indexOf("}") + 1);
+
+                    segments.add(new Segment(prefix, suffix, var));
+                    vars.add(var);
+                } else {
+                    segments.add(new Segment(s, "", null));
+                }
+            }
+        }
+
+        // an template with only slashes (ex: "//") never match any url
+        boolean matchable = t.isEmpty() || !segments.isEmpty();
+
+        return new SFPathTemplate(pathTemplate, segments.toArray(new Segment[segments.size()]), vars.toArray(new String[vars.size()]), matchable);
+    }
+
+    /**
+     * Get the size of the url, ignoring the last element if its empty ( url
+     * ends with / )
+     *
+     * @param pathUrl
+     * @return
+     */
+    public static int effectiveSize(List<String> pathUrl) {
+        int size = pathUrl.size();
+        if (size > 0 && pathUrl instanceof SFPathSegments) {
+            if (((SFPathSegments) pathUrl).length(size - 1) == 0) {
+                size--;
+            }
+        } else if (size > 0) {
+            String last = pathUrl.get(size - 1);
+            if (last == null || last.isEmpty()) {
+                size--;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Match the url segments against this template, the list is not modified
+     *
+     * @param pathUrl
+     * @return the captured variables or null if the url don't match
+     */
+    public SFPathMatch match(List<String> pathUrl) {
+        int size = effectiveSize(pathUrl);
+        if (!matchable || size != segments.length) {
+            return null;
+        }
+
+        SFPathMatch match = new SFPathMatch(vars.length);
+        SFPathSegments segs = pathUrl instanceof SFPathSegments ? (SFPathSegments) pathUrl : null;
+        int v = 0;
+        for (int i = 0; i < size; i++) {
+            Segment t = segments[i];
+            if (segs != null) {
+                if (!t.matches(segs, i)) {
+                    return null;
+                }
+                if (t.isVar()) {
+                    match.values[v++] = t.extract(segs, i);
+                }
+                continue;
+            }
+            String s = pathUrl.get(i);
+            if (!t.matches(s)) {
+                return null;
+            }
+            if (t.isVar()) {
+                match.values[v++] = t.extract(s);
+            }
+        }
+        match.set(null, vars, v);
+        return match;
+    }
+
+    /**
+     * Get the index of an variable, in the order they appear in the template
+     *
+     * @param var
+     * @return the index or -1 if not found
+     */
+    public int indexOf(String var) {
+        for (int i = 0; i < vars.length; i++) {
+            if (vars[i].equals(var)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return false if this template never match any url
+     *
+     * @return
+     */
+    public boolean isMatchable() {
+        return matchable;
+    }
+
+    public Segment[] getSegments() {
+        return segments;
+    }
+
+    public String[] getVars() {
+        return vars;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Segment trie with the pathVars templates of all the routes that share the
+ * same http method and name, routes with the same prefix share the same nodes.
+ * <br><br>
+ *
+ * When more than one route match the url, the one that comes first in the
+ * candidates array wins, same as checking the routes one by one.
+ *
+ */
+public class SFPathTrie {
+
+    protected static final int NONE = Integer.MAX_VALUE;
+
+    protected static class Node {
+
+        protected final Map<String, Node> literals = new HashMap<>();
+        protected final List<Edge> patterns = new ArrayList<>();
+        protected Node any;
+        protected SFRoute route;
+        protected int ordinal = NONE;
+        protected int minOrdinal = NONE;
+        // the literals sorted by hash code, to search SFPathSegments in place
+        protected int[] literalHashes;
+        protected String[] literalNames;
+        protected Node[] literalNodes;
+
+        protected void freeze() {
+            List<String> names = new ArrayList<>(literals.keySet());
+            names.sort((a, b) -> Integer.compare(a.hashCode(), b.hashCode()));
+            literalHashes = new int[names.size()];
+            literalNames = new String[names.size()];
+            literalNodes = new Node[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                literalHashes[i] = name.hashCode();
+                literalNames[i] = name;
+                literalNodes[i] = literals.get(name);
+                literalNodes[i].freeze();
+            }
+            if (any != null) {
+                any.freeze();
+            }
+            for (Edge edge : patterns) {
+                edge.node.freeze();
+            }
+        }
+
+        protected Node literal(SFPathSegments segments, int index) {
+            if (literalNames.length == 0) {
+                return null;
+            }
+            int hash = segments.hash(index);
+            int i = Arrays.binarySearch(literalHashes, hash);
+            if (i < 0) {
+                return null;
+            }
+            // the same hash can be in more than one position
+            while (i > 0 && literalHashes[i - 1] == hash) {
+                i--;
+            }
+            for (; i < literalHashes.length && literalHashes[i] == hash; i++) {
+                if (segments.regionEquals(index, literalNames[i])) {
+                    return literalNodes[i];
+                }
+            }
+            return null;
+        }
+
+    }
+
+    protected static class Edge {
+
+        protected final SFPathTemplate.Segment segment;
+        protected final Node node = new Node();
+
+        protected Edge(SFPathTemplate.Segment segment) {
+            this.segment = segment;
+        }
+
+    }
+
+    protected final SFRoute[] routes;
+    protected final Node root = new Node();
+    protected SFRoute anyRoute;
+    protected int anyOrdinal = NONE;
+    protected int maxVars;
+
+    /**
+     * Build the trie
+     *
+     * @param routes the candidates, in the order they must be checked
+     */
+    public SFPathTrie(SFRoute[] routes) {
+        this.routes = routes;
+        for (int i = 0; i < routes.length; i++) {
+            SFRoute route = routes[i];
+            SFPathTemplate template = route.getPathTemplate();
+            if (template == null) {
+                // route without pathVars match any url
+                if (anyRoute == null) {
+                    anyRoute = route;
+                    anyOrdinal = i;
+                }
+            } else if (template.isMatchable()) {
+                insert(template, route, i);
+            }
+        }
+        root.freeze();
+    }
+
+    private void insert(SFPathTemplate template, SFRoute route, int ordinal) {
+        Node node = root;
+        node.minOrdinal = Math.min(node.minOrdinal, ordinal);
+
+        for (SFPathTemplate.Segment segment : template.getSegments()) {
+            if (segment.isVar()) {
+                Edge edge = null;
+                for (Edge e : node.patterns) {
+                    if (e.segment.sameShape(segment)) {
+                        edge = e;
+                        break;
+                    }
+                }
+                if (edge == null) {
+                    edge = new Edge(segment);
+                    node.patterns.add(edge);
+                }
+                node = edge.node;
+            } else if (segment.prefix.isEmpty()) {
+                if (node.any == null) {
+                    node.any = new Node();
+                }
+                node = node.any;
+            } else {
+                Node next = node.literals.get(segment.prefix);
+                if (next == null) {
+                    next = new Node();
+                    node.literals.put(segment.prefix, next);
+                }
+                node = next;
+            }
+            node.minOrdinal = Math.min(node.minOrdinal, ordinal);
+        }
+
+        if (node.route == null) {
+            node.route = route;
+            node.ordinal = ordinal;
+        }
+        maxVars = Math.max(maxVars, template.getVars().length);
+    }
+
+    /**
+     * Search the first route that match the url segments, the list is not
+     * modified
+     *
+     * @param pathUrl url segments after the name of the method
+     * @return the match or null if no route match the url
+     */
+    public SFPathMatch match(List<String> pathUrl) {
+        if (root.minOrdinal < anyOrdinal) {
+            SFPathMatch match = new SFPathMatch(maxVars);
+            String[] captures = maxVars == 0 ? SFPathMatch.NO_VALUES : new String[maxVars];
+            SFPathSegments segments = pathUrl instanceof SFPathSegments ? (SFPathSegments) pathUrl : null;
+            search(root, pathUrl, segments, 0, SFPathTemplate.effectiveSize(pathUrl), captures, 0, match, anyOrdinal);
+            if (match.route != null) {
+                return match;
+            }
+        }
+        return anyRoute == null ? null : new SFPathMatch(anyRoute);
+    }
+
+    private int search(Node node, List<String> pathUrl, SFPathSegments segments, int index, int size, String[] captures, int depth, SFPathMatch match, int best) {
+
+        // no route below this node can beat the current match
+        if (node.minOrdinal >= best) {
+            return best;
+        }
+
+        if (index == size) {
+            if (node.ordinal < best) {
+                match.copy(node.route, node.route.getPathTemplate().getVars(), captures, depth);
+                return node.ordinal;
+            }
+            return best;
+        }
+
+        // SFPathSegments are compared in place, only the variables are
+        // created
+        String s = segments == null ? pathUrl.get(index) : null;
+
+        Node literal = s != null ? node.literals.get(s) : node.literal(segments, index);
+        if (literal != null) {
+            best = search(literal, pathUrl, segments, index + 1, size, captures, depth, match, best);
+        }
+
+        if (node.any != null) {
+            best = search(node.any, pathUrl, segments, index + 1, size, captures, depth, match, best);
+        }
+
+        for (int i = 0; i < node.patterns.size(); i++) {
+            Edge edge = node.patterns.get(i);
+            if (s != null ? edge.segment.matches(s) : edge.segment.matches(segments, index)) {
+                captures[depth] = s != null ? edge.segment.extract(s) : edge.segment.extract(segments, index);
+                best = search(edge.node, pathUrl, segments, index + 1, size, captures, depth + 1, match, best);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Get the candidates, in the order they must be checked
+     *
+     * @return
+     */
+    public SFRoute[] getRoutes() {
+        return routes;
+    }
+
+}
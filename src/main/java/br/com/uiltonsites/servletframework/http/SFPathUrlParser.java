@@ -37,114 +37,48 @@
  */
 package br.com.uiltonsites.servletframework.http;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Parse an url against an pathVars template, the templates are compiled only
+ * once (see SFPathTemplate) and kept in cache.
  *
  * @author Uilton Oliveira - uilton.dev@gmail.com
  */
-class PathParser {
-
-    public int pathPos;
-    public String prefix;
-    public String suffix;
-    public String var;
-
-    public PathParser(int pathPos, String prefix, String suffix, String var) {
-        this.pathPos = pathPos;
-        this.prefix = prefix;
-        this.suffix = suffix;
-        this.var = var;
-    }
-
-}
-
 public class SFPathUrlParser {
 
-    private static List<PathParser> parsePathTemplate(String pathTemplate) {
-        List<PathParser> pps = new ArrayList<PathParser>();
-
-        if (pathTemplate.isEmpty()) {
-            return pps;
-        }
-
-        int pos = 0;
-        for (String s : pathTemplate.split("/")) {
-
-            if (s.contains("{") && s.contains("}")) {
-                String var = s.substring(s.indexOf("{") + 1, s.indexOf("}"));
-                String prefix = s.substring(0, s.indexOf("{"));
-                String suffix = s.substring(s.indexOf("}") + 1);
-
-                pps.add(new PathParser(pos, prefix, suffix, var));
-            } else {
-                pps.add(new PathParser(pos, s, "", null));
+    private static final ConcurrentMap<String, SFPathTemplate> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Get the compiled version of an pathVars template
+     *
+     * @param pathTemplate
+     * @return
+     */
+    public static SFPathTemplate compile(String pathTemplate) {
+        SFPathTemplate template = templates.get(pathTemplate);
+        if (template == null) {
+            template = SFPathTemplate.compile(pathTemplate);
+            SFPathTemplate previous = templates.putIfAbsent(pathTemplate, template);
+            if (previous != null) {
+                template = previous;
             }
-
-            pos++;
         }
-
-        return pps;
-    }
-
-    private static String extractString(String str, String prefix, String suffix) {
-        int start = str.indexOf(prefix) + prefix.length();
-        int end = str.lastIndexOf(suffix);
-
-        return str.substring(start, end);
+        return template;
     }
 
+    /**
+     * Parse the url segments against an pathVars template, the list is not
+     * modified
+     *
+     * @param pathTemplate
+     * @param pathUrl
+     * @return the variables found or null if the url don't match the template
+     */
     public static List<SFPathValue> parse(String pathTemplate, List<String> pathUrl) {
-
-        if (pathTemplate.startsWith("/")) {
-            pathTemplate = pathTemplate.substring(1);
-        }
-
-        // remove last element if its empty ( url ends with / )
-        if (!pathUrl.isEmpty()) {
-            String last = pathUrl.get(pathUrl.size() - 1);
-            if (last == null || last.isEmpty()) {
-                pathUrl.remove(pathUrl.size() - 1);
-            }
-        }
-        
-        if (pathUrl.isEmpty() && pathTemplate.isEmpty()) {
-            return new ArrayList<>();
-        } else if (pathUrl.isEmpty() && !pathTemplate.isEmpty()) {
-            return null;
-        }
-        
-        List<PathParser> templates = parsePathTemplate(pathTemplate);
-        List<SFPathValue> values = new ArrayList<>();
-
-        if (pathUrl.size() != templates.size()) {
-            return null;
-        }
-
-        int i = 0;
-        for (String s : pathUrl) {
-
-            PathParser t = templates.get(i);
-
-            if (t.prefix != null && t.suffix != null && !t.prefix.isEmpty() && t.suffix.isEmpty() && t.var == null && !s.equals(t.prefix)) {
-                return null;
-            }
-
-            if (s.startsWith(t.prefix) && s.endsWith(t.suffix)) {
-
-                if (t.var != null) {
-                    String value = extractString(s, t.prefix, t.suffix);
-                    values.add(new SFPathValue(t.var, value));
-                }
-            } else {
-                return null;
-            }
-
-            i++;
-        }
-
-        return values;
-
+        SFPathMatch match = compile(pathTemplate).match(pathUrl);
+        return match == null ? null : match.toPathValues();
     }
 }
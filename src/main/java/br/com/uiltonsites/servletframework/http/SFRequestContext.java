@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFLogger;
+
+/**
+ * Objects of an request that are reused by the next requests of the same
+ * thread when the servlet have recycleContext enabled: the container, the
+ * segments of the url and the logger (that receive an new token on each
+ * request).<br><br>
+ *
+ * The context is not reused while in use (ex: an include of the same servlet)
+ * and is discarded when the request become async, since the objects are
+ * still referenced by the other thread.
+ *
+ */
+public class SFRequestContext {
+
+    protected final SFLogger logger;
+    protected final SFPathSegments segments = new SFPathSegments();
+    protected SFServletContainer container;
+    protected boolean inUse;
+
+    public SFRequestContext(SFLogger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Get the logger with an new token
+     *
+     * @return
+     */
+    public SFLogger getLogger() {
+        logger.newToken();
+        return logger;
+    }
+
+    public SFPathSegments getSegments() {
+        return segments;
+    }
+
+    /**
+     * Get the container of the last request
+     *
+     * @return null if the context was not used yet
+     */
+    public SFServletContainer getContainer() {
+        return container;
+    }
+
+    public void setContainer(SFServletContainer container) {
+        this.container = container;
+    }
+
+    public boolean isInUse() {
+        return inUse;
+    }
+
+    /**
+     * Mark the context as used by the current request
+     *
+     * @return false if it is already in use
+     */
+    public boolean acquire() {
+        if (inUse) {
+            return false;
+        }
+        inUse = true;
+        return true;
+    }
+
+    /**
+     * Release the references to the request, so they can be collected while
+     * the thread is idle
+     */
+    public void release() {
+        segments.clear();
+        if (container != null) {
+            container.clear();
+        }
+        inUse = false;
+    }
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFCacheable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Cache of the responses of an route annotated with SFCacheable, the
+ * responses are stored by the url, the parameters and the headers defined in
+ * the annotation.<br><br>
+ *
+ * The entries are split in segments by the hash of the key, each segment is
+ * an LRU limited by size (maxBytes / SEGMENTS), so responses bigger than
+ * that are never stored. Only one request call the method for each key at
+ * the same time, the others wait for it or use the stale response.
+ *
+ */
+public class SFResponseCache {
+
+    public static final int SEGMENTS = 8;
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String COOKIE = "Cookie";
+
+    /**
+     * An response stored in cache
+     */
+    public static class Entry {
+
+        protected final int status;
+        protected final List<String[]> headers;
+        protected final byte[] body;
+        protected final long expiresAt;
+        protected final long staleUntil;
+        protected final long weight;
+
+        public Entry(int status, List<String[]> headers, byte[] body, long expiresAt, long staleUntil) {
+            this.status = status;
+            this.headers = Collections.unmodifiableList(headers);
+            this.body = body;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+
+            long w = 64 + body.length;
+            for (String[] h : headers) {
+                w += 32 + 2 * (h[0].length() + (h[1] == null ? 0 : h[1].length()));
+            }
+            this.weight = w;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Get the headers of the response, each one as {name, value}
+         *
+         * @return
+         */
+        public List<String[]> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Return true if the ttl didn't expire
+         *
+         * @param now System.nanoTime()
+         * @return
+         */
+        public boolean isFresh(long now) {
+            return now - expiresAt < 0;
+        }
+
+        /**
+         * Return true if the entry can still be used while it is revalidated
+         *
+         * @param now System.nanoTime()
+         * @return
+         */
+        public boolean isUsable(long now) {
+            return now - staleUntil < 0;
+        }
+
+        /**
+         * Approximated size in memory, in bytes
+         *
+         * @return
+         */
+        public long getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * LRU limited by the weight of the entries
+     */
+    protected static class Segment extends LinkedHashMap<String, SFResponseCache.Entry> {
+
+        protected final long maxWeight;
+        protected long weight;
+
+        protected Segment(long maxWeight) {
+            super(16, 0.75f, true);
+            this.maxWeight = maxWeight;
+        }
+
+        protected static long weight(String key, SFResponseCache.Entry entry) {
+            return 2 * key.length() + entry.getWeight();
+        }
+
+        protected synchronized SFResponseCache.Entry find(String key) {
+            return get(key);
+        }
+
+        protected synchronized void store(String key, SFResponseCache.Entry entry) {
+            long w = weight(key, entry);
+            if (w > maxWeight) {
+                return;
+            }
+            SFResponseCache.Entry old = put(key, entry);
+            if (old != null) {
+                weight -= weight(key, old);
+            }
+            weight += w;
+
+            // remove the least recently used until the segment fit again
+            Iterator<Map.Entry<String, SFResponseCache.Entry>> it = entrySet().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                Map.Entry<String, SFResponseCache.Entry> eldest = it.next();
+                weight -= weight(eldest.getKey(), eldest.getValue());
+                it.remove();
+            }
+        }
+
+        protected synchronized void delete(String key) {
+            SFResponseCache.Entry old = remove(key);
+            if (old != null) {
+                weight -= weight(key, old);
+            }
+        }
+
+        protected synchronized void deleteAll() {
+            clear();
+            weight = 0;
+        }
+
+        protected synchronized long getWeight() {
+            return weight;
+        }
+    }
+
+    protected final long ttl;
+    protected final long staleWhileRevalidate;
+    protected final boolean allParams;
+    protected final String[] varyByParams;
+    protected final String[] varyByHeaders;
+    protected final long maxBytes;
+    protected final boolean cachePrivate;
+    protected final boolean varyByAuthorization;
+    protected final boolean varyByCookie;
+    protected final Segment[] segments = new Segment[SEGMENTS];
+    protected final ConcurrentHashMap<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder misses = new LongAdder();
+
+    public SFResponseCache(SFCacheable cacheable) {
+        this(cacheable.ttl(), cacheable.staleWhileRevalidate(), cacheable.varyByParams(), cacheable.varyByHeaders(), cacheable.maxBytes(), cacheable.cachePrivate());
+    }
+
+    /**
+     * @param ttl seconds
+     * @param staleWhileRevalidate seconds
+     * @param varyByParams
+     * @param varyByHeaders
+     * @param maxBytes
+     */
+    public SFResponseCache(long ttl, long staleWhileRevalidate, String[] varyByParams, String[] varyByHeaders, long maxBytes) {
+        this(ttl, staleWhileRevalidate, varyByParams, varyByHeaders, maxBytes, false);
+    }
+
+    /**
+     * @param ttl seconds
+     * @param staleWhileRevalidate seconds
+     * @param varyByParams
+     * @param varyByHeaders
+     * @param maxBytes
+     * @param cachePrivate cache also the requests with session, Authorization
+     * or Cookie (see isCacheable)
+     */
+    public SFResponseCache(long ttl, long staleWhileRevalidate, String[] varyByParams, String[] varyByHeaders, long maxBytes, boolean cachePrivate) {
+        this.ttl = TimeUnit.SECONDS.toNanos(ttl);
+        this.staleWhileRevalidate = TimeUnit.SECONDS.toNanos(Math.max(staleWhileRevalidate, 0));
+        this.allParams = Arrays.asList(varyByParams).contains(SFCacheable.ALL);
+        this.varyByParams = varyByParams.clone();
+        this.varyByHeaders = varyByHeaders.clone();
+        Arrays.sort(this.varyByParams);
+        this.maxBytes = maxBytes;
+        this.cachePrivate = cachePrivate;
+        this.varyByAuthorization = containsIgnoreCase(varyByHeaders, AUTHORIZATION);
+        this.varyByCookie = containsIgnoreCase(varyByHeaders, COOKIE);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
+    }
+
+    private static boolean containsIgnoreCase(String[] values, String value) {
+        for (String v : values) {
+            if (v.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the response of the request can be shared with other
+     * requests. The requests with an session, an Authorization or an Cookie
+     * header can belong to an user, they are only cached if the route opt in
+     * with cachePrivate or if the header is in varyByHeaders (the session is
+     * identified by the Cookie).
+     *
+     * @param request
+     * @return
+     */
+    public boolean isCacheable(HttpServletRequest request) {
+        if (cachePrivate) {
+            return true;
+        }
+        if (!varyByAuthorization && request.getHeader(AUTHORIZATION) != null) {
+            return false;
+        }
+        if (!varyByCookie && (request.getHeader(COOKIE) != null || request.getSession(false) != null)) {
+            return false;
+        }
+        return true;
+    }
+
+    protected Segment segment(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Build the key of the request, with the url and the values of the
+     * parameters and headers that change the response
+     *
+     * @param request
+     * @return
+     */
+    public String getKey(HttpServletRequest request) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(request.getPathInfo());
+
+        if (allParams) {
+            for (Map.Entry<String, String[]> p : new TreeMap<>(request.getParameterMap()).entrySet()) {
+                appendValues(sb.append('\u0000').append(p.getKey()), p.getValue());
+            }
+        } else {
+            for (String name : varyByParams) {
+                appendValues(sb.append('\u0000').append(name), request.getParameterValues(name));
+            }
+        }
+
+        for (String name : varyByHeaders) {
+            sb.append('\u0001').append(name).append('=');
+            String value = request.getHeader(name);
+            if (value != null) {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendValues(StringBuilder sb, String[] values) {
+        if (values != null) {
+            for (String v : values) {
+                sb.append('\u0002').append(v);
+            }
+        }
+    }
+
+    /**
+     * Get an response stored in cache, fresh or stale
+     *
+     * @param key
+     * @param now System.nanoTime()
+     * @return the entry or null if not found or if it can't be used anymore
+     */
+    public Entry get(String key, long now) {
+        Segment segment = segment(key);
+        Entry entry = segment.find(key);
+        if (entry != null && !entry.isUsable(now)) {
+            segment.delete(key);
+            entry = null;
+        }
+        if (entry != null && entry.isFresh(now)) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Create an entry that expire after the ttl
+     *
+     * @param status
+     * @param headers
+     * @param body
+     * @return
+     */
+    public Entry newEntry(int status, List<String[]> headers, byte[] body) {
+        long now = System.nanoTime();
+        return new Entry(status, headers, body, now + ttl, now + ttl + staleWhileRevalidate);
+    }
+
+    public void put(String key, Entry entry) {
+        segment(key).store(key, entry);
+    }
+
+    public void remove(String key) {
+        segment(key).delete(key);
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.deleteAll();
+        }
+    }
+
+    /**
+     * Mark the key as loading
+     *
+     * @param key
+     * @return an future that must be passed to finishLoading, or null if
+     * other request is already loading the key
+     */
+    public CompletableFuture<Entry> startLoading(String key) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        return loading.putIfAbsent(key, future) == null ? future : null;
+    }
+
+    /**
+     * Store the entry loaded (if not null) and wake up the requests waiting
+     * for it
+     *
+     * @param key
+     * @param future returned by startLoading
+     * @param entry
+     */
+    public void finishLoading(String key, CompletableFuture<Entry> future, Entry entry) {
+        if (entry != null) {
+            put(key, entry);
+        }
+        loading.remove(key, future);
+        future.complete(entry);
+    }
+
+    /**
+     * Wait other request load the key
+     *
+     * @param key
+     * @param timeout milliseconds, 0 or less to wait forever
+     * @return the entry loaded, or null if the response can't be cached or
+     * the timeout expired
+     * @throws InterruptedException
+     */
+    public Entry await(String key, long timeout) throws InterruptedException {
+        CompletableFuture<Entry> future = loading.get(key);
+        if (future == null) {
+            return segment(key).find(key);
+        }
+        try {
+            return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+        } catch (ExecutionException | TimeoutException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Number of requests answered with an fresh response
+     *
+     * @return
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Approximated size of all responses in cache, in bytes
+     *
+     * @return
+     */
+    public long getWeight() {
+        long w = 0;
+        for (Segment segment : segments) {
+            w += segment.getWeight();
+        }
+        return w;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+}
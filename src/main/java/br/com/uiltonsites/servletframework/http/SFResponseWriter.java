@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writer of the response that only call response.getWriter() when the first
+ * char is written, so the output can be written directly in the
+ * OutputStream of the response (see getOutputStream()) while nothing was
+ * printed.<br><br>
+ *
+ * After the OutputStream is used, the chars printed are encoded in the same
+ * OutputStream.
+ *
+ */
+public class SFResponseWriter extends PrintWriter {
+
+    protected final Target target;
+
+    public SFResponseWriter(HttpServletResponse response) {
+        this(new Target(response));
+    }
+
+    protected SFResponseWriter(Target target) {
+        super(target);
+        this.target = target;
+    }
+
+    /**
+     * Get the OutputStream of the response
+     *
+     * @return the stream or null if chars were already printed in this writer
+     * @throws IOException
+     */
+    public OutputStream getOutputStream() throws IOException {
+        synchronized (lock) {
+            return target.getOutputStream();
+        }
+    }
+
+    /**
+     * Return true if response.getWriter() was called
+     *
+     * @return
+     */
+    public boolean isWriterOpen() {
+        return target.writer != null;
+    }
+
+    protected static class Target extends Writer {
+
+        protected final HttpServletResponse response;
+        protected PrintWriter writer;
+        protected OutputStream stream;
+
+        protected Target(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        protected OutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                return null;
+            }
+            if (stream == null) {
+                stream = response.getOutputStream();
+            }
+            return stream;
+        }
+
+        protected PrintWriter writer() throws IOException {
+            if (writer == null) {
+                if (stream != null) {
+                    String charset = response.getCharacterEncoding();
+                    writer = new PrintWriter(new OutputStreamWriter(stream, charset != null ? charset : "ISO-8859-1"));
+                } else {
+                    writer = response.getWriter();
+                }
+            }
+            return writer;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            writer().write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            writer().write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            writer().write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (writer != null) {
+                // the writer of the response don't throw IOException
+                if (writer.checkError()) {
+                    throw new IOException("Failed to write the response");
+                }
+            } else if (stream != null) {
+                stream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            } else if (stream != null) {
+                stream.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFAllowCORS;
+import br.com.uiltonsites.servletframework.interfaces.SFCacheable;
+import br.com.uiltonsites.servletframework.interfaces.SFCompression;
+import br.com.uiltonsites.servletframework.interfaces.SFConditional;
+import br.com.uiltonsites.servletframework.interfaces.SFWebMethod;
+import br.com.uiltonsites.servletframework.utility.SFConfig;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
+/**
+ * An method of an SFHttpServlet resolved once when the route table is built,
+ * so the dispatch don't need to read the reflection data on every request
+ *
+ */
+public class SFRoute {
+
+    protected final Method method;
+    protected final String name;
+    protected final SFWebMethod webMethod;
+    protected final Parameter[] parameters;
+    protected final SFPathTemplate pathTemplate;
+    protected final SFMethodInvoker invoker;
+    protected final SFParamBinder[] binders;
+    protected final boolean pathBound;
+    protected final SFCorsPolicy cors;
+    protected final SFCompressionPolicy compression;
+    protected final boolean virtualThread;
+    protected final String mediaType;
+    protected volatile SFRouteMetrics metrics;
+    protected final SFBulkhead bulkhead;
+    protected final SFResponseCache cache;
+    protected final boolean conditional;
+    protected final SFMethodInvoker versionInvoker;
+    protected final boolean versionWithContainer;
+
+    public SFRoute(Method method, boolean allowCors) {
+        this(method, allowCors ? SFCorsPolicy.DEFAULT : null);
+    }
+
+    /**
+     * @param method
+     * @param classCors the CORS policy of the servlet, replaced by the
+     * SFAllowCORS of the method, can be null
+     */
+    public SFRoute(Method method, SFCorsPolicy classCors) {
+        this(method, classCors, SFCompressionPolicy.DEFAULT);
+    }
+
+    /**
+     * @param method
+     * @param classCors the CORS policy of the servlet, replaced by the
+     * SFAllowCORS of the method, can be null
+     * @param classCompression the compression policy of the servlet,
+     * replaced by the SFCompression of the method
+     */
+    public SFRoute(Method method, SFCorsPolicy classCors, SFCompressionPolicy classCompression) {
+        this(method, classCors, classCompression, null);
+    }
+
+    /**
+     * @param method
+     * @param classCors the CORS policy of the servlet, replaced by the
+     * SFAllowCORS of the method, can be null
+     * @param classCompression the compression policy of the servlet,
+     * replaced by the SFCompression of the method
+     * @param config the config that can replace the concurrency limits of
+     * SFWebMethod, can be null
+     */
+    public SFRoute(Method method, SFCorsPolicy classCors, SFCompressionPolicy classCompression, SFConfig config) {
+        this.method = method;
+        this.webMethod = method.getAnnotation(SFWebMethod.class);
+        this.parameters = method.getParameters();
+        this.pathTemplate = webMethod == null || webMethod.pathVars().equals(SFWebMethod.defaultPathVars) ? null : SFPathTemplate.compile(webMethod.pathVars());
+        this.name = routeName(method, pathTemplate);
+        this.invoker = SFMethodInvoker.create(method);
+        this.binders = SFParamBinder.compile(webMethod, pathTemplate, parameters);
+
+        boolean bound = false;
+        for (SFParamBinder binder : binders) {
+            bound |= binder.isPathBound();
+        }
+        this.pathBound = bound;
+        this.cors = SFCorsPolicy.resolve(method.getAnnotation(SFAllowCORS.class), classCors);
+        this.compression = SFCompressionPolicy.resolve(method.getAnnotation(SFCompression.class), classCompression);
+        this.virtualThread = webMethod != null && webMethod.virtualThread();
+        this.mediaType = webMethod != null ? SFSerializers.getMediaType(webMethod.contentType()) : null;
+        this.bulkhead = webMethod != null ? SFBulkhead.create(name, webMethod, config) : null;
+
+        SFCacheable cacheable = method.getAnnotation(SFCacheable.class);
+        this.cache = webMethod != null && cacheable != null ? new SFResponseCache(cacheable) : null;
+
+        SFConditional cond = method.getAnnotation(SFConditional.class);
+        this.conditional = webMethod != null && cond != null;
+        Method version = conditional && !cond.version().isEmpty() ? findVersionMethod(method.getDeclaringClass(), cond.version()) : null;
+        this.versionInvoker = version != null ? SFMethodInvoker.create(version) : null;
+        this.versionWithContainer = version != null && version.getParameterCount() == 1;
+    }
+
+    /**
+     * Build the name of the route, unique in the application: the full name of
+     * the class, the name of the method, the types of the parameters if the
+     * method is overloaded and the pathVars template if any
+     * (ex: com.example.MyServlet.user/{id})
+     *
+     * @param method
+     * @param template can be null
+     * @return
+     */
+    protected static String routeName(Method method, SFPathTemplate template) {
+        StringBuilder sb = new StringBuilder(method.getDeclaringClass().getName()).append('.').append(method.getName());
+
+        if (isOverloaded(method)) {
+            sb.append('(');
+            Class<?>[] types = method.getParameterTypes();
+            for (int i = 0; i < types.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(types[i].getSimpleName());
+            }
+            sb.append(')');
+        }
+
+        if (template != null) {
+            String t = template.getTemplate();
+            if (!t.startsWith("/")) {
+                sb.append('/');
+            }
+            sb.append(t);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isOverloaded(Method method) {
+        for (Method m : method.getDeclaringClass().getDeclaredMethods()) {
+            if (!m.equals(method) && !m.isSynthetic() && m.getName().equals(method.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Search the version method of SFConditional in the class and its
+     * superclasses
+     *
+     * @param clazz
+     * @param name
+     * @return
+     */
+    protected static Method findVersionMethod(Class<?> clazz, String name) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (m.getName().equals(name) && (m.getParameterCount() == 0
+                        || (m.getParameterCount() == 1 && m.getParameterTypes()[0].isAssignableFrom(SFServletContainer.class)))) {
+                    m.setAccessible(true);
+                    return m;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Version method not found: " + clazz.getName() + "." + name + "() or " + name + "(SFServletContainer)");
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the name of the route, used by the metrics and by the config of the
+     * bulkhead
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the SFWebMethod annotation of the method, can be null in case of the
+     * index method without annotation
+     *
+     * @return
+     */
+    public SFWebMethod getWebMethod() {
+        return webMethod;
+    }
+
+    public Parameter[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Get the compiled pathVars template, null if the route accept any url
+     *
+     * @return
+     */
+    public SFPathTemplate getPathTemplate() {
+        return pathTemplate;
+    }
+
+    /**
+     * Get the invoker used to call the method
+     *
+     * @return
+     */
+    public SFMethodInvoker getInvoker() {
+        return invoker;
+    }
+
+    /**
+     * Get the binders of the parameters, in the same order of the parameters
+     *
+     * @return
+     */
+    public SFParamBinder[] getBinders() {
+        return binders;
+    }
+
+    /**
+     * Return true if any parameter is read from the path variables
+     *
+     * @return
+     */
+    public boolean isPathBound() {
+        return pathBound;
+    }
+
+    public boolean isAllowCors() {
+        return cors != null;
+    }
+
+    /**
+     * Get the CORS policy of this route
+     *
+     * @return the policy or null if CORS is not allowed
+     */
+    public SFCorsPolicy getCorsPolicy() {
+        return cors;
+    }
+
+    /**
+     * Get the contentType of SFWebMethod without parameters, in lower case
+     *
+     * @return the media type or null if the method is not annotated
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Get the compression policy of this route
+     *
+     * @return
+     */
+    public SFCompressionPolicy getCompressionPolicy() {
+        return compression;
+    }
+
+    /**
+     * Return true if the method must run in an virtual thread
+     *
+     * @return
+     */
+    public boolean isVirtualThread() {
+        return virtualThread;
+    }
+
+    /**
+     * Get the limit of concurrent requests of this route
+     *
+     * @return the bulkhead or null if unlimited
+     */
+    public SFBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Get the cache of the responses of this route
+     *
+     * @return the cache or null if the method is not annotated with SFCacheable
+     */
+    public SFResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Return true if the method is annotated with SFConditional
+     *
+     * @return
+     */
+    public boolean isConditional() {
+        return conditional;
+    }
+
+    /**
+     * Get the invoker of the version method of SFConditional
+     *
+     * @return the invoker or null if the ETag is the hash of the response
+     */
+    public SFMethodInvoker getVersionInvoker() {
+        return versionInvoker;
+    }
+
+    /**
+     * Return true if the version method receive the SFServletContainer
+     *
+     * @return
+     */
+    public boolean isVersionWithContainer() {
+        return versionWithContainer;
+    }
+
+    /**
+     * Get the metrics of this route, registered in SFMetricsRegistry on the
+     * first call
+     *
+     * @return
+     */
+    public SFRouteMetrics getMetrics() {
+        SFRouteMetrics m = metrics;
+        if (m == null) {
+            m = SFMetricsRegistry.getRouteMetrics(name);
+            metrics = m;
+        }
+        return m;
+    }
+
+    /**
+     * Return true if this route accept the specified http method (GET, POST, etc)
+     *
+     * @param httpMethod
+     * @return
+     */
+    public boolean acceptHttpMethod(String httpMethod) {
+        return webMethod != null && (webMethod.method().equals(SFHttpServlet.METHOD_ALL) || webMethod.method().equals(httpMethod));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFLatencyHistogram;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of an route: requests, requests in flight, responses by status
+ * and the latency histogram. All counters are striped (LongAdder), recording
+ * don't lock and don't allocate after the first request of each status.
+ *
+ * @see SFMetricsRegistry
+ */
+public class SFRouteMetrics {
+
+    protected static final int MAX_STATUS = 600;
+
+    protected final String name;
+    protected final LongAdder requests = new LongAdder();
+    protected final LongAdder inFlight = new LongAdder();
+    protected final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(MAX_STATUS);
+    protected final SFLatencyHistogram latency = new SFLatencyHistogram();
+
+    public SFRouteMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Called when an request start
+     */
+    public void start() {
+        inFlight.increment();
+    }
+
+    /**
+     * Called when an request end, once for each call of start()
+     *
+     * @param status http status of the response
+     * @param nanos duration of the request
+     */
+    public void end(int status, long nanos) {
+        inFlight.decrement();
+        requests.increment();
+        latency.record(nanos);
+
+        int index = status >= 0 && status < MAX_STATUS ? status : 0;
+        LongAdder counter = statuses.get(index);
+        if (counter == null) {
+            counter = new LongAdder();
+            if (!statuses.compareAndSet(index, null, counter)) {
+                counter = statuses.get(index);
+            }
+        }
+        counter.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Number of responses with status 400 or above
+     *
+     * @return
+     */
+    public long getErrors() {
+        long errors = 0;
+        for (int i = 400; i < MAX_STATUS; i++) {
+            LongAdder counter = statuses.get(i);
+            if (counter != null) {
+                errors += counter.sum();
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Number of responses by http status (0 for unknown status)
+     *
+     * @return
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int i = 0; i < MAX_STATUS; i++) {
+            LongAdder counter = statuses.get(i);
+            if (counter != null) {
+                counts.put(i, counter.sum());
+            }
+        }
+        return counts;
+    }
+
+    public SFLatencyHistogram getLatency() {
+        return latency;
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFAllowCORS;
+import br.com.uiltonsites.servletframework.interfaces.SFCompression;
+import br.com.uiltonsites.servletframework.interfaces.SFWebMethod;
+import br.com.uiltonsites.servletframework.utility.SFConfig;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable table with all the routes of an SFHttpServlet, built only once by
+ * reflection when the servlet is initialized.<br><br>
+ *
+ * The routes are indexed by http method and name (the first segment of the
+ * url), the candidates of each key keep the same order used by the old lookup:
+ * first the methods with that java name, then the methods with that
+ * SFWebMethod name, both in the order returned by getDeclaredMethods(), and
+ * their pathVars templates are merged in an SFPathTrie.
+ *
+ */
+public class SFRouteTable {
+
+    protected static final SFRoute[] EMPTY = new SFRoute[0];
+    protected static final List<String> NO_SEGMENTS = Collections.emptyList();
+
+    protected static final String[] DEFAULT_HTTP_METHODS = {
+        SFHttpServlet.METHOD_GET,
+        SFHttpServlet.METHOD_POST,
+        SFHttpServlet.METHOD_PUT,
+        SFHttpServlet.METHOD_DELETE,
+        SFHttpServlet.METHOD_OPTIONS,
+        SFHttpServlet.METHOD_HEAD,
+        SFHttpServlet.METHOD_TRACE
+    };
+
+    protected final Class<?> servletClass;
+    protected final SFCorsPolicy cors;
+    protected final SFCompressionPolicy compression;
+    protected final SFConfig config;
+    protected final SFRoute[] routes;
+    protected final Map<Method, SFRoute> routesByMethod = new ConcurrentHashMap<>();
+    protected final Map<String, Method> methodsByName = new HashMap<>();
+    protected final Map<String, Map<String, SFPathTrie>> routesByHttpMethod = new HashMap<>();
+    protected final Map<String, SFPathTrie> routesAnyHttpMethod;
+
+    public SFRouteTable(Class<?> servletClass) {
+        this(servletClass, null);
+    }
+
+    /**
+     * @param servletClass
+     * @param config the config that can replace the concurrency limits of
+     * the routes (see SFBulkhead.create), can be null
+     */
+    public SFRouteTable(Class<?> servletClass, SFConfig config) {
+        this.servletClass = servletClass;
+        this.config = config;
+        SFAllowCORS allowCors = servletClass.getAnnotation(SFAllowCORS.class);
+        this.cors = allowCors != null ? new SFCorsPolicy(allowCors) : null;
+        this.compression = SFCompressionPolicy.resolve(servletClass.getAnnotation(SFCompression.class), SFCompressionPolicy.DEFAULT);
+
+        List<SFRoute> annotated = new ArrayList<>();
+        for (Method method : servletClass.getDeclaredMethods()) {
+            if (!methodsByName.containsKey(method.getName())) {
+                methodsByName.put(method.getName(), method);
+            }
+            // the routes of the methods without SFWebMethod (ex: index) are
+            // only built if they are requested by name
+            if (method.isAnnotationPresent(SFWebMethod.class)) {
+                SFRoute route = newRoute(method);
+                routesByMethod.put(method, route);
+                annotated.add(route);
+            }
+        }
+        this.routes = annotated.toArray(new SFRoute[annotated.size()]);
+
+        Set<String> httpMethods = new LinkedHashSet<>();
+        for (String httpMethod : DEFAULT_HTTP_METHODS) {
+            httpMethods.add(httpMethod);
+        }
+        for (SFRoute route : routes) {
+            if (!route.getWebMethod().method().equals(SFHttpServlet.METHOD_ALL)) {
+                httpMethods.add(route.getWebMethod().method());
+            }
+        }
+
+        for (String httpMethod : httpMethods) {
+            routesByHttpMethod.put(httpMethod, index(httpMethod));
+        }
+        this.routesAnyHttpMethod = index(SFHttpServlet.METHOD_ALL);
+    }
+
+    protected SFRoute newRoute(Method method) {
+        return new SFRoute(method, cors, compression, config);
+    }
+
+    private Map<String, SFPathTrie> index(String httpMethod) {
+        Map<String, List<SFRoute>> byName = new HashMap<>();
+
+        // first search by the name of the method
+        for (SFRoute route : routes) {
+            if (route.acceptHttpMethod(httpMethod)) {
+                add(byName, route.getMethod().getName(), route);
+            }
+        }
+
+        // then by the attribute name of the annotation SFWebMethod
+        for (SFRoute route : routes) {
+            if (route.acceptHttpMethod(httpMethod)) {
+                add(byName, route.getWebMethod().name(), route);
+            }
+        }
+
+        Map<String, SFPathTrie> index = new HashMap<>();
+        for (Map.Entry<String, List<SFRoute>> entry : byName.entrySet()) {
+            index.put(entry.getKey(), new SFPathTrie(entry.getValue().toArray(new SFRoute[entry.getValue().size()])));
+        }
+        return index;
+    }
+
+    private static void add(Map<String, List<SFRoute>> byName, String name, SFRoute route) {
+        List<SFRoute> list = byName.get(name);
+        if (list == null) {
+            list = new ArrayList<>();
+            byName.put(name, list);
+        }
+        list.add(route);
+    }
+
+    /**
+     * Get the candidates for the specified http method and name, in the order
+     * they must be checked (first match wins)
+     *
+     * @param httpMethod
+     * @param name
+     * @return the candidates, or an empty array if none
+     */
+    public SFRoute[] getRoutes(String httpMethod, String name) {
+        SFPathTrie trie = getTrie(httpMethod, name);
+        return trie == null ? EMPTY : trie.getRoutes();
+    }
+
+    /**
+     * Search the first route for the specified http method and name that
+     * match the url segments
+     *
+     * @param httpMethod
+     * @param name
+     * @param pathUrl url segments after the name, the list is not modified
+     * @return the match or null if no route was found
+     */
+    public SFPathMatch match(String httpMethod, String name, List<String> pathUrl) {
+        SFPathTrie trie = getTrie(httpMethod, name);
+        return trie == null ? null : trie.match(pathUrl == null ? NO_SEGMENTS : pathUrl);
+    }
+
+    protected SFPathTrie getTrie(String httpMethod, String name) {
+        Map<String, SFPathTrie> byName = routesByHttpMethod.get(httpMethod);
+        if (byName == null) {
+            byName = routesAnyHttpMethod;
+        }
+        return byName.get(name);
+    }
+
+    /**
+     * Get the first declared method with the specified java name, even if it
+     * isn't annotated with SFWebMethod
+     *
+     * @param methodName
+     * @return the route or null if not found
+     */
+    public SFRoute getRoute(String methodName) {
+        Method method = methodsByName.get(methodName);
+        return method == null ? null : getRoute(method);
+    }
+
+    /**
+     * Get the route of an declared method, the route of an method without
+     * SFWebMethod is built on the first call
+     *
+     * @param method
+     * @return the route or null if the method is not declared in the servlet
+     */
+    public SFRoute getRoute(Method method) {
+        SFRoute route = routesByMethod.get(method);
+        if (route == null && method.getDeclaringClass() == servletClass) {
+            route = routesByMethod.computeIfAbsent(method, this::newRoute);
+        }
+        return route;
+    }
+
+    /**
+     * Get all methods annotated with SFWebMethod, in declaration order
+     *
+     * @return
+     */
+    public SFRoute[] getRoutes() {
+        return routes;
+    }
+
+    public Class<?> getServletClass() {
+        return servletClass;
+    }
+
+    public boolean isAllowCors() {
+        return cors != null;
+    }
+
+    /**
+     * Get the compression policy of the servlet (SFCompression of the class)
+     *
+     * @return
+     */
+    public SFCompressionPolicy getCompressionPolicy() {
+        return compression;
+    }
+
+    /**
+     * Get the CORS policy of the servlet (SFAllowCORS of the class)
+     *
+     * @return the policy or null if CORS is not allowed
+     */
+    public SFCorsPolicy getCorsPolicy() {
+        return cors;
+    }
+
+}
@@ -18,17 +18,23 @@
  */
 package br.com.uiltonsites.servletframework.http;
 
+import br.com.uiltonsites.servletframework.utility.SFDeadline;
 import br.com.uiltonsites.servletframework.utility.SFLogger;
+import br.com.uiltonsites.servletframework.utility.SFParamConverters;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
 import br.com.uiltonsites.servletframework.abstracts.SFMyLogger;
-import com.google.gson.Gson;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -43,13 +49,39 @@ import javax.servlet.http.Part;
  */
 public class SFServletContainer extends SFMyLogger {
 
-    protected String viewPath = "/WEB-INF/views/";
-    protected String loginUrl = "admin/login";
-    protected String loggedInAttribute = "isLoggedIn";
+    protected static final String DEFAULT_VIEW_PATH = "/WEB-INF/views/";
+    protected static final String DEFAULT_LOGIN_URL = "admin/login";
+    protected static final String DEFAULT_LOGGED_IN_ATTRIBUTE = "isLoggedIn";
+
+    /**
+     * The containers are only recycled if the class declare clear(), so the
+     * fields of an subclass are never carried to the next request
+     */
+    private static final ClassValue<Boolean> RECYCLABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> clazz) {
+            try {
+                return clazz.getMethod("clear").getDeclaringClass() == clazz;
+            } catch (NoSuchMethodException ex) {
+                return false;
+            }
+        }
+    };
+
+    protected String viewPath = DEFAULT_VIEW_PATH;
+    protected String loginUrl = DEFAULT_LOGIN_URL;
+    protected String loggedInAttribute = DEFAULT_LOGGED_IN_ATTRIBUTE;
     protected HttpServletRequest request;
     protected HttpServletResponse response;
     protected List<String> pathParameters;
-    protected Map<String, Object> jsVarMap = new HashMap<>();
+    protected SFPathMatch pathMatch;
+    protected SFRoute route;
+    protected AsyncContext asyncContext;
+    protected long startTime = System.nanoTime();
+    protected SFDeadline deadline;
+    protected SFParameterIndex parameterIndex;
+    protected Map<String, Object> jsVarMap;
+    protected List<SFUpload> uploads;
     protected PrintWriter out;
 
     public SFServletContainer(HttpServletRequest request, HttpServletResponse response, List<String> pathParameters, PrintWriter out, SFLogger logger) {
@@ -68,6 +100,62 @@ public class SFServletContainer extends SFMyLogger {
         this.out = out;
     }
 
+    /**
+     * Prepare this container to be used by another request (see
+     * SFRequestContext), all the state of the previous request is discarded
+     * by clear()
+     *
+     * @param request
+     * @param response
+     * @param pathParameters
+     * @param out
+     * @param logger
+     */
+    public void recycle(HttpServletRequest request, HttpServletResponse response, List<String> pathParameters, PrintWriter out, SFLogger logger) {
+        clear();
+        this.request = request;
+        this.response = response;
+        this.pathParameters = pathParameters;
+        this.out = out;
+        this.logger = logger;
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Return true if this container can be recycled, only if its class
+     * declare clear()
+     *
+     * @return
+     */
+    public boolean isRecyclable() {
+        return RECYCLABLE.get(getClass());
+    }
+
+    /**
+     * Drop the references to the request and reset the state to the initial
+     * values. Subclasses returned by SFHttpServlet.newSFServletContainer must
+     * override this method to reset their own fields (and call super),
+     * otherwise the container is not recycled.
+     */
+    public void clear() {
+        viewPath = DEFAULT_VIEW_PATH;
+        loginUrl = DEFAULT_LOGIN_URL;
+        loggedInAttribute = DEFAULT_LOGGED_IN_ATTRIBUTE;
+        request = null;
+        response = null;
+        pathParameters = null;
+        pathMatch = null;
+        route = null;
+        asyncContext = null;
+        deadline = null;
+        parameterIndex = null;
+        if (jsVarMap != null) {
+            jsVarMap.clear();
+        }
+        uploads = null;
+        out = null;
+    }
+
     /**
      * Return true in case of specified param is null
      *
@@ -143,6 +231,10 @@ public class SFServletContainer extends SFMyLogger {
         return response;
     }
 
+    public void setResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
     /**
      * [REQUEST] {@link javax.servlet.http.HttpServletRequest#getMethod() }
      *
@@ -163,6 +255,123 @@ public class SFServletContainer extends SFMyLogger {
         return pathParameters;
     }
 
+    /**
+     * [REQUEST] Get the route matched by the url and the variables captured
+     * from the pathVars template of SFWebMethod
+     *
+     * @return the match or null if the route was not resolved by url
+     */
+    public SFPathMatch getPathMatch() {
+        return pathMatch;
+    }
+
+    public void setPathMatch(SFPathMatch pathMatch) {
+        this.pathMatch = pathMatch;
+    }
+
+    /**
+     * [REQUEST] Get the route that is handling this request
+     *
+     * @return
+     */
+    public SFRoute getRoute() {
+        return route;
+    }
+
+    public void setRoute(SFRoute route) {
+        this.route = route;
+    }
+
+    /**
+     * [REQUEST] Get the async context started when the method of the route
+     * returned an CompletionStage
+     *
+     * @return the context or null if the request is not async
+     */
+    public AsyncContext getAsyncContext() {
+        return asyncContext;
+    }
+
+    public void setAsyncContext(AsyncContext asyncContext) {
+        this.asyncContext = asyncContext;
+    }
+
+    /**
+     * [REQUEST] Get the System.nanoTime() of when the request started
+     *
+     * @return
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * [REQUEST] Get the time budget of the request, attach it with
+     * SFDeadline.attach to use it in other threads
+     *
+     * @return the deadline or null if the request don't have one
+     */
+    public SFDeadline getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(SFDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Register an file received by an SFUploadParam of this request
+     *
+     * @param upload
+     */
+    public void addUpload(SFUpload upload) {
+        if (uploads == null) {
+            uploads = new ArrayList<>(2);
+        }
+        uploads.add(upload);
+    }
+
+    /**
+     * Get the files received by the SFUploadParam of this request
+     *
+     * @return
+     */
+    public List<SFUpload> getUploads() {
+        return uploads == null ? Collections.<SFUpload>emptyList() : uploads;
+    }
+
+    /**
+     * Delete the files received by the SFUploadParam of this request, called
+     * when the method of the route is not called
+     */
+    public void deleteUploads() {
+        if (uploads == null) {
+            return;
+        }
+        for (SFUpload upload : uploads) {
+            try {
+                upload.delete();
+            } catch (IOException ex) {
+                logger.warn("Failed to delete the upload " + upload.getPath() + ": " + ex.getMessage());
+            }
+        }
+        uploads = null;
+    }
+
+    /**
+     * Return true if the response will be written after the container thread
+     * is released
+     *
+     * @return
+     */
+    public boolean isAsyncStarted() {
+        return asyncContext != null;
+    }
+
     /**
      * [REQUEST] Get parameter from url path, example:
      * http://google.com/adduser/username/password will return an array with
@@ -224,6 +433,7 @@ public class SFServletContainer extends SFMyLogger {
     
     /**
      * Cast String object to the clazz type, or return defaultValue if could not cast or value is null
+     * (see {@link SFParamConverters})
      *
      * @param <T>
      * @param value
@@ -232,45 +442,7 @@ public class SFServletContainer extends SFMyLogger {
      * @return
      */
     public static <T> T castString(String value, Object defaultValue, Class<T> clazz) {
-        if (value != null) {
-            if (String.class.isAssignableFrom(clazz)) {
-                return clazz.cast(value);
-            }
-            if (Integer.class.isAssignableFrom(clazz) || int.class.isAssignableFrom(clazz)) {
-                try {
-                    return clazz.cast(Integer.valueOf(value));
-                } catch (NumberFormatException ex) {
-                    return clazz.cast(defaultValue);
-                }
-            }
-            if (Double.class.isAssignableFrom(clazz) || double.class.isAssignableFrom(clazz)) {
-                try {
-                    return clazz.cast(Double.valueOf(value));
-                } catch (NumberFormatException ex) {
-                    return clazz.cast(defaultValue);
-                }
-            }
-            if (Float.class.isAssignableFrom(clazz) || float.class.isAssignableFrom(clazz)) {
-                try {
-                    return clazz.cast(Float.valueOf(value));
-                } catch (NumberFormatException ex) {
-                    return clazz.cast(defaultValue);
-                }
-            }
-            if (Long.class.isAssignableFrom(clazz) || long.class.isAssignableFrom(clazz)) {
-                try {
-                    return clazz.cast(Long.valueOf(value));
-                } catch (NumberFormatException ex) {
-                    return clazz.cast(defaultValue);
-                }
-            }
-            if (Boolean.class.isAssignableFrom(clazz) || boolean.class.isAssignableFrom(clazz)) {
-                return clazz.cast(value.equalsIgnoreCase("true") || value.equals("1"));
-            }
-            return clazz.cast(value);
-        } else {
-            return clazz.cast(defaultValue);
-        }
+        return SFParamConverters.convert(value, defaultValue, clazz);
     }
 
     public Part getPart(String name) {
@@ -378,20 +550,148 @@ public class SFServletContainer extends SFMyLogger {
         return request.getSession(create);
     }
 
+    /**
+     * [REQUEST] Get the index of the parameters by the case-folded name,
+     * built only once per request (and again after an forward or include)
+     *
+     * @return
+     */
+    public SFParameterIndex getParameterIndex() {
+        if (parameterIndex == null || !parameterIndex.isIndexOf(request)) {
+            parameterIndex = SFParameterIndex.of(request);
+        }
+        return parameterIndex;
+    }
+
     /**
      * [REQUEST]
      * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
      *
      * @param name
      * @return
      */
     public String getParameterIsensitive(String name) {
-        for (Map.Entry<String, String[]> entry : request.getParameterMap().entrySet()) {
-            if (entry.getKey().equalsIgnoreCase(name)) {
-                return entry.getValue()[0];
-            }
-        }
-        return null;
+        return getParameterIndex().getValue(name);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public String getParameterIsensitive(String name, String defaultValue) {
+        String param = getParameterIsensitive(name);
+        return param != null ? param : defaultValue;
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param <T>
+     * @param name
+     * @param defaultValue
+     * @param clazz
+     * @return
+     */
+    public <T> T getParameterIsensitive(String name, Object defaultValue, Class<T> clazz) {
+        return SFServletContainer.castString(getParameterIsensitive(name), defaultValue, clazz);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameterValues(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @return
+     */
+    public String[] getParameterValuesIsensitive(String name) {
+        return getParameterIndex().getValues(name);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public Integer getParameterIntIsensitive(String name, Integer defaultValue) {
+        return getParameterIsensitive(name, defaultValue, Integer.class);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public Long getParameterLongIsensitive(String name, Long defaultValue) {
+        return getParameterIsensitive(name, defaultValue, Long.class);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public Double getParameterDoubleIsensitive(String name, Double defaultValue) {
+        return getParameterIsensitive(name, defaultValue, Double.class);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public Boolean getParameterBooleanIsensitive(String name, Boolean defaultValue) {
+        return getParameterIsensitive(name, defaultValue, Boolean.class);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public Float getParameterFloatIsensitive(String name, Float defaultValue) {
+        return getParameterIsensitive(name, defaultValue, Float.class);
+    }
+
+    /**
+     * [REQUEST]
+     * {@link javax.servlet.http.HttpServletRequest#getParameter(String)}
+     * ignoring the case of the name
+     *
+     * @param name
+     * @param defaultValue
+     * @return
+     */
+    public String getParameterStringIsensitive(String name, String defaultValue) {
+        return getParameterIsensitive(name, defaultValue, String.class);
     }
 
     /**
@@ -417,11 +717,14 @@ public class SFServletContainer extends SFMyLogger {
      * @param o
      */
     public void setAttributeJS(String name, Object o) {
+        if (jsVarMap == null) {
+            jsVarMap = new HashMap<>();
+        }
         jsVarMap.put(name, o);
     }
 
     private void setAllStoredJS() {
-        request.setAttribute("jsvar", new Gson().toJson(jsVarMap));
+        request.setAttribute("jsvar", SFSerializers.getGson().toJson(jsVarMap != null ? jsVarMap : Collections.emptyMap()));
     }
 
     /**
@@ -689,4 +992,26 @@ public class SFServletContainer extends SFMyLogger {
     public PrintWriter getWriter() {
         return out;
     }
+
+    public void setWriter(PrintWriter out) {
+        this.out = out;
+    }
+
+    /**
+     * Get the OutputStream of the response, can only be used if nothing was
+     * printed in the writer
+     *
+     * @return
+     * @throws IOException
+     */
+    public OutputStream getOutputStream() throws IOException {
+        if (out instanceof SFResponseWriter) {
+            OutputStream os = ((SFResponseWriter) out).getOutputStream();
+            if (os == null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            return os;
+        }
+        return response.getOutputStream();
+    }
 }
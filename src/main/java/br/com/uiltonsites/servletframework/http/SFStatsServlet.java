@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.utility.SFLatencyHistogram;
+import br.com.uiltonsites.servletframework.utility.SFSerializers;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Expose the metrics of the routes (SFMetricsRegistry), it is not mapped by
+ * default, to enable it extend this class with an WebServlet annotation or
+ * declare it in the web.xml.<br><br>
+ *
+ * Return JSON by default, or the text format of Prometheus when the url end
+ * with /prometheus or the parameter format=prometheus is used.
+ *
+ */
+public class SFStatsServlet extends HttpServlet {
+
+    public static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4";
+
+    protected static final double[] PERCENTILES = {50, 99, 99.9};
+    /** quantile labels of PERCENTILES, p / 100 is not exact in double */
+    protected static final String[] QUANTILES = {"0.5", "0.99", "0.999"};
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        List<SFRouteMetrics> routes = SFMetricsRegistry.getAll();
+        if (isPrometheus(req)) {
+            resp.setContentType(CONTENT_TYPE_PROMETHEUS);
+            try (PrintWriter out = resp.getWriter()) {
+                printPrometheus(routes, out);
+            }
+        } else {
+            resp.setContentType(SFHttpServlet.CONTENT_TYPE_APPLICATION_JSON);
+            SFSerializers.getObjectMapper().writeValue(resp.getOutputStream(), toJson(routes));
+        }
+    }
+
+    protected boolean isPrometheus(HttpServletRequest req) {
+        String pathInfo = req.getPathInfo();
+        return "prometheus".equals(req.getParameter("format")) || (pathInfo != null && pathInfo.endsWith("/prometheus"));
+    }
+
+    protected List<Map<String, Object>> toJson(List<SFRouteMetrics> routes) {
+        List<Map<String, Object>> list = new ArrayList<>(routes.size());
+        for (SFRouteMetrics metrics : routes) {
+            SFLatencyHistogram.Snapshot latency = metrics.getLatency().snapshot();
+
+            Map<String, Object> lat = new LinkedHashMap<>();
+            lat.put("count", latency.getCount());
+            lat.put("mean_ns", (long) latency.getMean());
+            lat.put("p50_ns", latency.getValueAtPercentile(50));
+            lat.put("p99_ns", latency.getValueAtPercentile(99));
+            lat.put("p999_ns", latency.getValueAtPercentile(99.9));
+            lat.put("max_ns", latency.getMax());
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("route", metrics.getName());
+            map.put("requests", metrics.getRequests());
+            map.put("errors", metrics.getErrors());
+            map.put("in_flight", metrics.getInFlight());
+            map.put("status", metrics.getStatusCounts());
+            map.put("latency", lat);
+            list.add(map);
+        }
+        return list;
+    }
+
+    protected void printPrometheus(List<SFRouteMetrics> routes, PrintWriter out) {
+        out.print("# HELP sf_requests_total Requests handled by the route\n");
+        out.print("# TYPE sf_requests_total counter\n");
+        for (SFRouteMetrics metrics : routes) {
+            out.print("sf_requests_total{route=\"" + label(metrics.getName()) + "\"} " + metrics.getRequests() + "\n");
+        }
+
+        out.print("# HELP sf_responses_total Responses of the route by http status\n");
+        out.print("# TYPE sf_responses_total counter\n");
+        for (SFRouteMetrics metrics : routes) {
+            for (Map.Entry<Integer, Long> entry : metrics.getStatusCounts().entrySet()) {
+                out.print("sf_responses_total{route=\"" + label(metrics.getName()) + "\",status=\"" + entry.getKey() + "\"} " + entry.getValue() + "\n");
+            }
+        }
+
+        out.print("# HELP sf_in_flight Requests of the route running now\n");
+        out.print("# TYPE sf_in_flight gauge\n");
+        for (SFRouteMetrics metrics : routes) {
+            out.print("sf_in_flight{route=\"" + label(metrics.getName()) + "\"} " + metrics.getInFlight() + "\n");
+        }
+
+        out.print("# HELP sf_request_duration_seconds Latency of the route\n");
+        out.print("# TYPE sf_request_duration_seconds summary\n");
+        for (SFRouteMetrics metrics : routes) {
+            String route = label(metrics.getName());
+            SFLatencyHistogram.Snapshot latency = metrics.getLatency().snapshot();
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.print("sf_request_duration_seconds{route=\"" + route + "\",quantile=\"" + QUANTILES[i] + "\"} " + seconds(latency.getValueAtPercentile(PERCENTILES[i])) + "\n");
+            }
+            out.print("sf_request_duration_seconds_sum{route=\"" + route + "\"} " + seconds(latency.getSum()) + "\n");
+            out.print("sf_request_duration_seconds_count{route=\"" + route + "\"} " + latency.getCount() + "\n");
+        }
+    }
+
+    protected static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Escape an label value of the Prometheus format
+     *
+     * @param value
+     * @return
+     */
+    protected static String label(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An part of an multipart request received by SFUploadReceiver
+ *
+ */
+public class SFUpload {
+
+    protected final String name;
+    protected final String fileName;
+    protected final String contentType;
+    protected Path path;
+    protected long size;
+    protected String checksum;
+
+    public SFUpload(String name, String fileName, String contentType) {
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Get the name of the part
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the file name sent by the client
+     *
+     * @return can be null
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get the file with the content of the part
+     *
+     * @return the file or null if the part was received by an consumer
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public File getFile() {
+        return path == null ? null : path.toFile();
+    }
+
+    /**
+     * Get the number of bytes received
+     *
+     * @return
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the checksum in hex
+     *
+     * @return the checksum or null if not computed
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Delete the file, if any
+     *
+     * @return true if the file was deleted
+     * @throws IOException
+     */
+    public boolean delete() throws IOException {
+        return path != null && Files.deleteIfExists(path);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + fileName + ", " + size + " bytes)";
+    }
+
+}
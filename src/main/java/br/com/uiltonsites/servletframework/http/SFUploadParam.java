@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFUploadConsumer;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bind an part of an multipart request to the parameter, the part is
+ * streamed to an file (or to the consumer) without being copied to the heap.
+ * <br><br>
+ *
+ * The parameter can be of type SFUpload, java.nio.file.Path or java.io.File,
+ * the file is created in the directory and the method is responsible to
+ * move or delete it. With an consumer the file is not created and only
+ * SFUpload is accepted. The parameter can also be a javax.servlet.http.Part,
+ * in this case only maxSize is checked.<br><br>
+ *
+ * The servlet must be annotated with javax.servlet.annotation.MultipartConfig.
+ * If the method is not called (ex: other parameter is invalid) the files are
+ * deleted by the framework.
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface SFUploadParam {
+
+    /** no limit */
+    public static final long UNLIMITED = -1;
+
+    String name();
+    boolean required() default true;
+    /** max bytes of the part, checked while streaming */
+    long maxSize() default UNLIMITED;
+    /** directory of the file, the temp dir of the JVM if empty */
+    String directory() default "";
+    /** algorithm of the checksum computed while streaming: CRC32 or an MessageDigest algorithm (ex: SHA-256), empty for none */
+    String checksum() default "";
+    /** receive the content of the part instead of writing it to an file */
+    Class<? extends SFUploadConsumer> consumer() default SFUploadConsumer.class;
+}
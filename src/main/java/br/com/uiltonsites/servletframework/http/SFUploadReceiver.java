@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.http;
+
+import br.com.uiltonsites.servletframework.interfaces.SFUploadConsumer;
+import br.com.uiltonsites.servletframework.utility.exceptions.SFParseParameterException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import javax.servlet.http.Part;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Stream the content of an part to an file with FileChannel.transferFrom (or
+ * to an SFUploadConsumer), checking the max size and computing the checksum
+ * while the bytes pass, so the part is never copied to the heap.
+ *
+ */
+public class SFUploadReceiver {
+
+    public static final String CRC32 = "CRC32";
+
+    /** max bytes requested to each transferFrom */
+    protected static final long TRANSFER_SIZE = 1024 * 1024;
+
+    protected final long maxSize;
+    protected final Path directory;
+    protected final String checksum;
+    protected final SFUploadConsumer consumer;
+
+    /**
+     * @param maxSize max bytes of the part, 0 or less for unlimited
+     * @param directory directory of the files, null for the temp dir
+     * @param checksum CRC32 or an MessageDigest algorithm, null for none
+     * @param consumer receive the content instead of an file, can be null
+     */
+    public SFUploadReceiver(long maxSize, Path directory, String checksum, SFUploadConsumer consumer) {
+        this.maxSize = maxSize;
+        this.directory = directory;
+        this.checksum = checksum == null || checksum.isEmpty() ? null : checksum;
+        this.consumer = consumer;
+        // fail when the route is built instead of on each request
+        newChecksum();
+    }
+
+    /**
+     * Create the receiver of an parameter annotated with SFUploadParam
+     *
+     * @param annotation
+     * @return
+     */
+    public static SFUploadReceiver create(SFUploadParam annotation) {
+        SFUploadConsumer consumer = null;
+        if (annotation.consumer() != SFUploadConsumer.class) {
+            try {
+                consumer = annotation.consumer().getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalArgumentException("Failed to create the consumer of the upload " + annotation.name(), ex);
+            }
+        }
+        Path directory = annotation.directory().isEmpty() ? null : Paths.get(annotation.directory());
+        return new SFUploadReceiver(annotation.maxSize(), directory, annotation.checksum(), consumer);
+    }
+
+    /**
+     * Throw an SFParseParameterException if the declared size of the part
+     * exceed the max size, called before reading it
+     *
+     * @param part
+     * @throws SFParseParameterException
+     */
+    public void checkSize(Part part) throws SFParseParameterException {
+        if (maxSize > 0 && part.getSize() > maxSize) {
+            throw tooLarge(part.getName());
+        }
+    }
+
+    /**
+     * Receive the content of the part
+     *
+     * @param part
+     * @return
+     * @throws SFParseParameterException if the part exceed the max size
+     * @throws IOException
+     */
+    public SFUpload receive(Part part) throws SFParseParameterException, IOException {
+        checkSize(part);
+
+        SFUpload upload = new SFUpload(part.getName(), part.getSubmittedFileName(), part.getContentType());
+        Object sum = newChecksum();
+
+        CheckedStream in = new CheckedStream(part.getInputStream(), sum);
+        try {
+            if (consumer != null) {
+                consumer.accept(upload, in);
+            } else {
+                upload.path = directory == null ? Files.createTempFile("upload-", ".tmp") : Files.createTempFile(directory, "upload-", ".tmp");
+                transfer(in, upload.path);
+            }
+            upload.size = in.count;
+            upload.checksum = toHex(sum);
+        } catch (IOException | RuntimeException ex) {
+            upload.delete();
+            // the consumer can wrap the exception of the stream
+            if (in.isExceeded()) {
+                throw tooLarge(part.getName());
+            }
+            throw ex;
+        } finally {
+            in.close();
+        }
+        return upload;
+    }
+
+    protected void transfer(InputStream in, Path path) throws IOException {
+        try (ReadableByteChannel src = Channels.newChannel(in);
+                FileChannel dst = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long n;
+            // the source is blocking, 0 bytes transferred means the end of the stream
+            while ((n = dst.transferFrom(src, position, TRANSFER_SIZE)) > 0) {
+                position += n;
+            }
+        }
+    }
+
+    protected SFParseParameterException tooLarge(String name) {
+        return new SFParseParameterException("framework_upload_too_large", "Upload exceed the max size of " + maxSize + " bytes: " + name);
+    }
+
+    protected Object newChecksum() {
+        if (checksum == null) {
+            return null;
+        }
+        if (CRC32.equalsIgnoreCase(checksum)) {
+            return new CRC32();
+        }
+        try {
+            return MessageDigest.getInstance(checksum);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalArgumentException("Unknown checksum algorithm: " + checksum, ex);
+        }
+    }
+
+    protected static String toHex(Object sum) {
+        if (sum instanceof MessageDigest) {
+            return Hex.encodeHexString(((MessageDigest) sum).digest());
+        } else if (sum instanceof CRC32) {
+            String hex = Long.toHexString(((CRC32) sum).getValue());
+            return "00000000".substring(hex.length()) + hex;
+        }
+        return null;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public SFUploadConsumer getConsumer() {
+        return consumer;
+    }
+
+    protected static class TooLargeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Count the bytes read, update the checksum and fail when the max size
+     * is exceeded
+     */
+    protected class CheckedStream extends FilterInputStream {
+
+        protected final Object sum;
+        protected long count;
+
+        protected CheckedStream(InputStream in, Object sum) {
+            super(in);
+            this.sum = sum;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                update(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be counted and checked too
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        protected boolean isExceeded() {
+            return maxSize > 0 && count > maxSize;
+        }
+
+        protected void update(byte[] b, int off, int len) throws IOException {
+            count += len;
+            if (isExceeded()) {
+                throw new TooLargeException();
+            }
+            if (sum instanceof MessageDigest) {
+                ((MessageDigest) sum).update(b, off, len);
+            } else if (sum instanceof CRC32) {
+                ((CRC32) sum).update(b, off, len);
+            }
+        }
+    }
+
+}
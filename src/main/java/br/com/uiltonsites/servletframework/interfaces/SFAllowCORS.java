@@ -24,11 +24,36 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
+ * Allow cross origin requests in all methods of the servlet (class) or in
+ * one SFWebMethod (method), the annotation of the method replace the one of
+ * the class.<br><br>
+ *
+ * The policy is resolved when the route table is built, and the preflight
+ * requests (OPTIONS) are answered without calling the method.
  *
  * @author Uilton Oliveira - uilton.dev@gmail.com
  */
 
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.TYPE) //can use in method/class only.
+@Target({ElementType.TYPE, ElementType.METHOD}) //can use in method/class only.
 public @interface SFAllowCORS {
+    /** allowed origins (ex: https://example.com), "*" for any origin */
+    public String[] origins() default {ANY};
+    /** allowed http methods, empty for OPTIONS, GET, POST, DELETE, PUT */
+    public String[] methods() default {};
+    /** allowed request headers, empty to allow the headers requested by the browser */
+    public String[] headers() default {};
+    /** response headers that the browser can read */
+    public String[] exposedHeaders() default {};
+    /** seconds that the browser can cache the preflight, -1 to not send Access-Control-Max-Age */
+    public long maxAge() default defaultMaxAge;
+    /**
+     * allow cookies and authorization, the allowed origin is echoed instead
+     * of "*". Requires an explicit list of origins, the route table fails to
+     * build if origins contains "*"
+     */
+    public boolean allowCredentials() default false;
+
+    public static final String ANY = "*";
+    public static final long defaultMaxAge = 600;
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Cache the response of an SFWebMethod (GET and HEAD only), in memory. While
+ * the response is in cache the method is not called.<br><br>
+ *
+ * Only responses with status 200 and without cookies are cached. When the
+ * ttl expire, the response can still be used for staleWhileRevalidate seconds
+ * while one request call the method again.<br><br>
+ *
+ * The same response is returned to all the users: by default the requests
+ * with an session, an Authorization header or an Cookie header are not
+ * cached (the method is always called). Add Authorization or Cookie to
+ * varyByHeaders to cache them by user, or set cachePrivate = true if the
+ * response don't depend on the user.
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SFCacheable {
+    /** seconds that the response is fresh */
+    public long ttl() default defaultTtl;
+    /** seconds that an expired response can be used while it is revalidated */
+    public long staleWhileRevalidate() default 0;
+    /** parameters that change the response, ALL for all parameters of the request */
+    public String[] varyByParams() default {ALL};
+    /** headers that change the response */
+    public String[] varyByHeaders() default {};
+    /** max size in bytes of all responses in cache for this method */
+    public long maxBytes() default defaultMaxBytes;
+    /** cache also the requests with session, Authorization or Cookie, shared by all users */
+    public boolean cachePrivate() default false;
+
+    public static final String ALL = "*";
+    public static final long defaultTtl = 60;
+    public static final long defaultMaxBytes = 16 * 1024 * 1024;
+}
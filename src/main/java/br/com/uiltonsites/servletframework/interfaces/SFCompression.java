@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configure the compression (gzip or deflate, based on Accept-Encoding) of
+ * the responses of the servlet (class) or of one SFWebMethod (method), the
+ * annotation of the method replace the one of the class.<br><br>
+ *
+ * Without this annotation, the responses with the default contentTypes and
+ * bigger than defaultMinSize are compressed.
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface SFCompression {
+    /** false to never compress */
+    public boolean enabled() default true;
+    /** responses smaller than this (in bytes) are not compressed */
+    public int minSize() default defaultMinSize;
+    /** content types that are compressed, "text/*" for all text types */
+    public String[] contentTypes() default {"application/json", "application/xml", "application/javascript", "text/*"};
+    /** level of the Deflater, 0-9 or -1 for the default */
+    public int level() default defaultLevel;
+
+    public static final int defaultMinSize = 1024;
+    public static final int defaultLevel = -1;
+}
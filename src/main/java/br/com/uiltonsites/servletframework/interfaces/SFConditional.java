@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Answer the GET and HEAD requests of an SFWebMethod with 304 (Not Modified)
+ * when the client already have the response (If-None-Match or
+ * If-Modified-Since).<br><br>
+ *
+ * Without version, the ETag is an hash of the response (the method is always
+ * called), or the ETag / Last-Modified header set by the method.<br>
+ * With version, the method named is called before the SFWebMethod and the
+ * SFWebMethod is not called when the client have that version. The version
+ * method can have no parameters or one SFServletContainer, and return an
+ * java.util.Date (Last-Modified) or any other object (its toString() is the
+ * ETag), null to ignore.
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SFConditional {
+    /** name of the method of the servlet that return the version of the response */
+    public String version() default "";
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Define how the instance of the servlet used to call the methods is obtained,
+ * servlets annotated with ApplicationScoped are always SINGLETON.<br><br>
+ *
+ * SINGLETON: the servlet created by the container is used in all requests.<br>
+ * REQUEST: an new instance is created on each request (default).<br>
+ * THREAD: each thread reuse its own instance (one idle instance per thread,
+ * virtual threads don't keep instances), the hook recycleInstance is called
+ * before the instance is reused.
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SFInstanceScope {
+    public Scope value() default Scope.REQUEST;
+
+    public enum Scope {
+        SINGLETON, REQUEST, THREAD
+    }
+}
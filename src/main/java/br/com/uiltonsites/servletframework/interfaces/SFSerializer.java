@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Write the object returned by an SFWebMethod in the format of an content
+ * type, see SFSerializers
+ *
+ */
+public interface SFSerializer {
+
+    /**
+     * Write the value encoded in UTF-8, the stream must not be closed
+     *
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    public void write(Object value, OutputStream out) throws IOException;
+
+    /**
+     * Write the value, the writer must not be closed
+     *
+     * @param value
+     * @param out
+     * @throws IOException
+     */
+    public void write(Object value, Writer out) throws IOException;
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Return of an SFWebMethod that write the response by itself, the output is
+ * sent to the client in chunks while it is written instead of being built in
+ * memory.
+ *
+ */
+@FunctionalInterface
+public interface SFStreamingBody {
+
+    /**
+     * Write the response
+     *
+     * @param out flushed to the client each chunk, throw an
+     * SFClientAbortException if the client disconnected
+     * @throws IOException
+     */
+    public void writeTo(Writer out) throws IOException;
+}
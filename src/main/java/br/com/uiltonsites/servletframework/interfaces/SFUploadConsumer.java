@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.interfaces;
+
+import br.com.uiltonsites.servletframework.http.SFUpload;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receive the content of an part bound by SFUploadParam, an instance is
+ * created for each parameter when the route is built and shared by all the
+ * requests.
+ *
+ */
+@FunctionalInterface
+public interface SFUploadConsumer {
+
+    /**
+     * Read the content of the part
+     *
+     * @param upload the part being received, the size and checksum are
+     * filled after this method return
+     * @param in the content, throw an IOException when maxSize is exceeded
+     * @throws IOException
+     */
+    public void accept(SFUpload upload, InputStream in) throws IOException;
+}
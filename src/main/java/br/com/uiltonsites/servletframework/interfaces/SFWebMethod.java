@@ -35,10 +35,29 @@ public @interface SFWebMethod {
     public String pathVars() default defaultPathVars;
     public String method() default defaultMethod;
     public String contentType() default defaultContentType;
+    public long asyncTimeout() default defaultAsyncTimeout;
+    /** run the method in an virtual thread (JDK 21+), the container thread is released */
+    public boolean virtualThread() default false;
+    /** max number of requests running at the same time, 0 for unlimited */
+    public int maxConcurrency() default defaultMaxConcurrency;
+    /** milliseconds that an request can wait when maxConcurrency is reached, 0 to reject immediately */
+    public long queueTimeout() default 0;
+    /** adjust the concurrency limit by the latency (AIMD), up to maxConcurrency */
+    public boolean adaptiveConcurrency() default false;
+    /** seconds sent in the Retry-After of the requests rejected by maxConcurrency */
+    public int retryAfter() default defaultRetryAfter;
+    /** time budget in ms of the request, applied to the queries of SFQueryHelper and requests of SFHttpUtil, 0 for unlimited */
+    public long requestTimeout() default defaultRequestTimeout;
 //    public boolean loginRequired() default false;
     
     public static final String defaultPathVars = "#ANY#";
     public static final String defaultName = "METHOD_NAME";
     public static final String defaultMethod = "ALL";
     public static final String defaultContentType = "text/html";
+    /** use the async timeout of the servlet */
+    public static final long defaultAsyncTimeout = -1;
+    public static final int defaultMaxConcurrency = 0;
+    public static final int defaultRetryAfter = 1;
+    /** use the request timeout of the servlet */
+    public static final long defaultRequestTimeout = -1;
 }
@@ -18,7 +18,12 @@
  */
 package br.com.uiltonsites.servletframework.managedbean;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import javax.faces.context.FacesContext;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -28,13 +33,21 @@ import javax.servlet.http.HttpSessionContext;
 /**
  * Class that encapsulate the session and add few new methods
  * PS: This file was mapped in META-INF/faces-config.xml to work in JSF as ManagedBean
+ * <br><br>
+ *
+ * The session is only created on the first write, the reads of an request
+ * without session return null (or empty) so anonymous page views don't
+ * create sessions.
  *
  * @author Uilton Oliveira - uilton.dev@gmail.com
  */
 public class SFSessionManagedBean implements HttpSession {
-    
-    HttpServletRequest request = (HttpServletRequest)FacesContext.getCurrentInstance().getExternalContext().getRequest();
-    HttpSession session = request.getSession(true);
+
+    /** case-folded name -> name of the attributes, rebuilt for each request */
+    protected Map<String, String> attributeIndex;
+    /** session and request of the index, only compared by identity */
+    protected WeakReference<HttpSession> indexSession;
+    protected WeakReference<HttpServletRequest> indexRequest;
     
     /**
      * Creates a new instance of NewJSFManagedBean
@@ -42,6 +55,37 @@ public class SFSessionManagedBean implements HttpSession {
     public SFSessionManagedBean() {
         
     }
+
+    /**
+     * Get the request being processed, always read from the FacesContext so
+     * the bean don't keep any request
+     *
+     * @return the request or null if called outside of an JSF request
+     */
+    protected HttpServletRequest getRequest() {
+        FacesContext context = FacesContext.getCurrentInstance();
+        return context == null ? null : (HttpServletRequest) context.getExternalContext().getRequest();
+    }
+
+    /**
+     * Get the session of the request
+     *
+     * @param create create the session if the request don't have one
+     * @return the session or null if the request don't have one and create
+     * is false (or if called outside of an JSF request)
+     * @throws IllegalStateException if create is true outside of an JSF
+     * request
+     */
+    public HttpSession getSession(boolean create) {
+        HttpServletRequest current = getRequest();
+        if (current == null) {
+            if (create) {
+                throw new IllegalStateException("SFSessionManagedBean can only create the session inside of an JSF request");
+            }
+            return null;
+        }
+        return current.getSession(create);
+    }
     
     /**
      * Return tne object and delete it from session
@@ -50,117 +94,221 @@ public class SFSessionManagedBean implements HttpSession {
      */
     public Object getAttributeFlash(String key) {
         
+        HttpSession s = getSession(false);
+        if (s == null) {
+            return null;
+        }
         try {
-            return session.getAttribute(key);
+            return s.getAttribute(key);
         } finally {
-            session.removeAttribute(key);
+            removeAttribute(key);
         }
         
     }
     
     /**
-     * Check if the session contains the key
+     * Check if the session contains the key, ignoring the case
      * @param key
      * @return 
      */
     public boolean containsAttribute(String key) {
-        Enumeration<String> attributeNames = session.getAttributeNames();
-        while (attributeNames.hasMoreElements()) {
-            if (attributeNames.nextElement().equalsIgnoreCase(key)) {
-                return true;
+        HttpSession s = getSession(false);
+        if (s == null) {
+            return false;
+        }
+        if (s.getAttribute(key) != null) {
+            return true;
+        }
+        String name = getAttributeIndex(s).get(fold(key));
+        if (name != null && s.getAttribute(name) == null) {
+            // removed without this bean, build the index again
+            attributeIndex = null;
+            name = getAttributeIndex(s).get(fold(key));
+        }
+        return name != null;
+    }
+
+    /**
+     * Get the index of the names of the attributes by the case-folded name,
+     * built once per request and kept updated by the writes of this bean
+     *
+     * @param s
+     * @return
+     */
+    protected Map<String, String> getAttributeIndex(HttpSession s) {
+        HttpServletRequest current = getRequest();
+        if (attributeIndex == null || !isIndexOf(s) || indexRequest.get() != current) {
+            Map<String, String> index = new HashMap<>();
+            Enumeration<String> attributeNames = s.getAttributeNames();
+            while (attributeNames.hasMoreElements()) {
+                String name = attributeNames.nextElement();
+                index.putIfAbsent(fold(name), name);
             }
+            attributeIndex = index;
+            indexSession = new WeakReference<>(s);
+            indexRequest = new WeakReference<>(current);
         }
-        return false;
+        return attributeIndex;
+    }
+
+    protected static String fold(String name) {
+        return name.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
     }
 
+    private boolean isIndexOf(HttpSession s) {
+        return attributeIndex != null && indexSession.get() == s;
+    }
+
+    private void indexAdd(HttpSession s, String name) {
+        if (isIndexOf(s)) {
+            attributeIndex.putIfAbsent(fold(name), name);
+        }
+    }
+
+    private void indexRemove(HttpSession s, String name) {
+        String key = fold(name);
+        if (isIndexOf(s) && attributeIndex.remove(key, name)) {
+            // other attribute can have the same case-folded name (ex: "A" and "a")
+            Enumeration<String> attributeNames = s.getAttributeNames();
+            while (attributeNames.hasMoreElements()) {
+                String other = attributeNames.nextElement();
+                if (fold(other).equals(key)) {
+                    attributeIndex.put(key, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 0 if the request don't have an session
+     */
     @Override
     public long getCreationTime() {
-        return session.getCreationTime();
+        HttpSession s = getSession(false);
+        return s == null ? 0 : s.getCreationTime();
     }
 
+    /**
+     * @return null if the request don't have an session
+     */
     @Override
     public String getId() {
-        return session.getId();
+        HttpSession s = getSession(false);
+        return s == null ? null : s.getId();
     }
 
+    /**
+     * @return 0 if the request don't have an session
+     */
     @Override
     public long getLastAccessedTime() {
-        return session.getLastAccessedTime();
+        HttpSession s = getSession(false);
+        return s == null ? 0 : s.getLastAccessedTime();
     }
 
     @Override
     public ServletContext getServletContext() {
-        return session.getServletContext();
+        HttpSession s = getSession(false);
+        HttpServletRequest current = getRequest();
+        return s != null ? s.getServletContext() : current != null ? current.getServletContext() : null;
     }
 
     @Override
     public void setMaxInactiveInterval(int interval) {
-        session.setMaxInactiveInterval(interval);
+        getSession(true).setMaxInactiveInterval(interval);
     }
 
+    /**
+     * @return 0 if the request don't have an session
+     */
     @Override
     public int getMaxInactiveInterval() {
-        return session.getMaxInactiveInterval();
+        HttpSession s = getSession(false);
+        return s == null ? 0 : s.getMaxInactiveInterval();
     }
 
     @Deprecated
     @Override
     public HttpSessionContext getSessionContext() {
-        return session.getSessionContext();
+        HttpSession s = getSession(false);
+        return s == null ? null : s.getSessionContext();
     }
 
     @Override
     public Object getAttribute(String name) {
-        return session.getAttribute(name);
+        HttpSession s = getSession(false);
+        return s == null ? null : s.getAttribute(name);
     }
 
     @Deprecated
     @Override
     public Object getValue(String name) {
-        return session.getValue(name);
+        return getAttribute(name);
     }
 
     @Override
     public Enumeration<String> getAttributeNames() {
-        return session.getAttributeNames();
+        HttpSession s = getSession(false);
+        return s == null ? Collections.<String>emptyEnumeration() : s.getAttributeNames();
     }
 
     @Deprecated
     @Override
     public String[] getValueNames() {
-        return session.getValueNames();
+        HttpSession s = getSession(false);
+        return s == null ? new String[0] : s.getValueNames();
     }
 
     @Override
     public void setAttribute(String name, Object value) {
-        session.setAttribute(name, value);
+        if (value == null) {
+            // same as removeAttribute, don't need an session
+            removeAttribute(name);
+            return;
+        }
+        HttpSession s = getSession(true);
+        s.setAttribute(name, value);
+        indexAdd(s, name);
     }
 
     @Deprecated
     @Override
     public void putValue(String name, Object value) {
-        session.putValue(name, value);
+        setAttribute(name, value);
     }
 
     @Override
     public void removeAttribute(String name) {
-        session.removeAttribute(name);
+        HttpSession s = getSession(false);
+        if (s != null) {
+            s.removeAttribute(name);
+            indexRemove(s, name);
+        }
     }
 
     @Deprecated
     @Override
     public void removeValue(String name) {
-        session.removeValue(name);
+        removeAttribute(name);
     }
 
     @Override
     public void invalidate() {
-        session.invalidate();
+        HttpSession s = getSession(false);
+        if (s != null) {
+            s.invalidate();
+        }
+        attributeIndex = null;
     }
 
+    /**
+     * @return false if the request don't have an session
+     */
     @Override
     public boolean isNew() {
-        return session.isNew();
+        HttpSession s = getSession(false);
+        return s != null && s.isNew();
     }
     
 }
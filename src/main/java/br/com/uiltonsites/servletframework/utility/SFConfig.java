@@ -19,6 +19,7 @@
 package br.com.uiltonsites.servletframework.utility;
 
 import br.com.uiltonsites.servletframework.abstracts.SFMyLogger;
+import br.com.uiltonsites.servletframework.interfaces.SFParamConverter;
 import br.com.uiltonsites.servletframework.utility.exceptions.SFLoadConfigException;
 
 import java.io.FileNotFoundException;
@@ -256,23 +257,28 @@ public class SFConfig extends SFMyLogger {
                 Method m = findMethod(obj.getClass(), name);
                 if (m != null) {
                     String value = propData.properties.getProperty(key);
-                    Class type = m.getParameterTypes()[0];
-                    if (type.equals(Long.class)) {
-                        m.invoke(obj, Long.parseLong(value));
-                    } else if (type.equals(Integer.class)) {
-                        m.invoke(obj, value == null || value.isEmpty() ? null : Integer.parseInt(value));
-                    } else if (type.equals(Double.class)) {
-                        m.invoke(obj, value == null || value.isEmpty() ? null : Double.parseDouble(value));
-                    } else if (type.equals(Float.class)) {
-                        m.invoke(obj, value == null || value.isEmpty() ? null : Float.parseFloat(value));
-                    } else if (type.equals(String.class)) {
-                        m.invoke(obj, value);
-                    } else if (type.equals(Boolean.class)) {
-                        m.invoke(obj, value != null && (value.equals("1") || value.toLowerCase().equals("true")));
+                    Class<?> type = m.getParameterTypes()[0];
+                    SFParamConverter<?> converter = SFParamConverters.get(type);
+                    if (converter != null) {
+                        Object converted = value == null ? null : converter.convert(value);
+                        if (converted == null && type.equals(Boolean.class)) {
+                            // an missing Boolean is false, as before the converters
+                            converted = Boolean.FALSE;
+                        }
+                        if (converted == null && value != null && !value.isEmpty()) {
+                            // keep the default of the field on an invalid value
+                            logger.warn("Invalid value for " + key + ": " + value);
+                            continue;
+                        }
+                        if (converted == null && (type.isPrimitive() || type.equals(Long.class))) {
+                            // an empty Long never cleared the field
+                            continue;
+                        }
+                        m.invoke(obj, converted);
                     } else {
-                        logger.debug("Unknow Parameter Type: " + m.getParameterTypes()[0].toString());
+                        logger.debug("Unknow Parameter Type: " + type.toString());
                         m.invoke(obj, value);
-                    }       
+                    }
                 }
             } catch (Exception ex) {
                 logger.error("Failed to call method: " + name, ex);
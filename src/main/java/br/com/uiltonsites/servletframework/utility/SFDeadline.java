@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of an request, measured with System.nanoTime().<br><br>
+ *
+ * The servlet attach the deadline of the request to the thread that run the
+ * method of the route, so SFQueryHelper and SFHttpUtil can limit the time of
+ * the statements and outbound requests made by the method without receiving
+ * it as parameter. Code that run in other threads (ex: an CompletionStage)
+ * can get the deadline from SFServletContainer and attach it.
+ *
+ */
+public final class SFDeadline {
+
+    private static final ThreadLocal<SFDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadline;
+
+    private SFDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Create an deadline that expire after the specified time
+     *
+     * @param start System.nanoTime() of when the budget started
+     * @param millis
+     * @return
+     */
+    public static SFDeadline after(long start, long millis) {
+        return new SFDeadline(start + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * Create an deadline that expire after the specified time, starting now
+     *
+     * @param millis
+     * @return
+     */
+    public static SFDeadline after(long millis) {
+        return after(System.nanoTime(), millis);
+    }
+
+    /**
+     * Get the deadline attached to the current thread
+     *
+     * @return the deadline or null if the thread don't have one
+     */
+    public static SFDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Attach an deadline to the current thread, the returned value must be
+     * given to detach when the work is done
+     *
+     * @param deadline can be null
+     * @return the deadline that was attached before
+     */
+    public static SFDeadline attach(SFDeadline deadline) {
+        SFDeadline previous = CURRENT.get();
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * Restore the deadline that was attached before attach
+     *
+     * @param previous
+     */
+    public static void detach(SFDeadline previous) {
+        attach(previous);
+    }
+
+    /**
+     * Get the nanos left, negative if the deadline already passed
+     *
+     * @return
+     */
+    public long getRemainingNanos() {
+        return deadline - System.nanoTime();
+    }
+
+    /**
+     * Get the milliseconds left (rounded up), 0 if expired
+     *
+     * @return
+     */
+    public long getRemainingMillis() {
+        long nanos = getRemainingNanos();
+        return nanos <= 0 ? 0 : (nanos + 999999) / 1000000;
+    }
+
+    /**
+     * Get the seconds left (rounded up) in the format of
+     * Statement.setQueryTimeout, 0 if expired
+     *
+     * @return
+     */
+    public int getRemainingSeconds() {
+        long nanos = getRemainingNanos();
+        if (nanos <= 0) {
+            return 0;
+        }
+        long seconds = (nanos + 999999999) / 1000000000;
+        return seconds > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) seconds;
+    }
+
+    public boolean isExpired() {
+        return getRemainingNanos() <= 0;
+    }
+
+    /**
+     * Limit an timeout in ms by the time left
+     *
+     * @param timeout 0 or less means no timeout
+     * @return the smallest of both
+     */
+    public int limit(int timeout) {
+        long remaining = Math.max(getRemainingMillis(), 1);
+        if (timeout <= 0 || remaining < timeout) {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return getRemainingMillis() + "ms";
+    }
+
+}
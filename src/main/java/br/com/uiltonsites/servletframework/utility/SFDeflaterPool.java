@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of Deflaters, each Deflater allocate native memory that is only
+ * released by end() (or by the GC), so they are reused between the
+ * responses.
+ *
+ */
+public class SFDeflaterPool {
+
+    public static final int defaultMaxSize = 64;
+
+    private static final SFDeflaterPool[] POOLS = new SFDeflaterPool[22];
+
+    protected final int level;
+    protected final boolean nowrap;
+    protected final int maxSize;
+    protected final ConcurrentLinkedQueue<Deflater> pool = new ConcurrentLinkedQueue<>();
+    protected final AtomicInteger size = new AtomicInteger();
+
+    public SFDeflaterPool(int level, boolean nowrap, int maxSize) {
+        this.level = level;
+        this.nowrap = nowrap;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the shared pool of an level
+     *
+     * @param level 0-9 or -1 for the default
+     * @param nowrap true for raw deflate (used by gzip), false for zlib
+     * @return
+     */
+    public static SFDeflaterPool get(int level, boolean nowrap) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        int index = (level + 1) * 2 + (nowrap ? 1 : 0);
+        SFDeflaterPool pool = POOLS[index];
+        if (pool != null) {
+            return pool;
+        }
+        synchronized (POOLS) {
+            pool = POOLS[index];
+            if (pool == null) {
+                pool = new SFDeflaterPool(level, nowrap, defaultMaxSize);
+                POOLS[index] = pool;
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Get an Deflater from the pool, or create one if the pool is empty
+     *
+     * @return
+     */
+    public Deflater acquire() {
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+        size.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Return an Deflater to the pool, the Deflater is ended if the pool is
+     * full
+     *
+     * @param deflater
+     */
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if (size.incrementAndGet() <= maxSize) {
+            pool.offer(deflater);
+        } else {
+            size.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /**
+     * Number of Deflaters waiting in the pool
+     *
+     * @return
+     */
+    public int size() {
+        return size.get();
+    }
+
+}
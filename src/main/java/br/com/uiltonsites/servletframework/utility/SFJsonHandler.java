@@ -18,7 +18,6 @@
  */
 package br.com.uiltonsites.servletframework.utility;
 
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.IOException;
@@ -39,16 +38,16 @@ import java.util.Map;
 public class SFJsonHandler {
     private final String json;
     private final Map<String, Object> jsonMap;
-    private final Type type = new TypeToken<Map<String, Object>>(){}.getType();
+    private static final Type type = new TypeToken<Map<String, Object>>(){}.getType();
 
     public SFJsonHandler(String json) {
         this.json = json;
-        jsonMap = new Gson().fromJson(json, type);
+        jsonMap = SFSerializers.getGson().fromJson(json, type);
     }
     
     public SFJsonHandler(Path jsonFile) throws IOException {
         this.json = readFileToString(jsonFile, "UTF-8");
-        jsonMap = new Gson().fromJson(json, type);
+        jsonMap = SFSerializers.getGson().fromJson(json, type);
     }
     
     private String readFileToString(Path filePath, String encoding) throws IOException {
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets (same idea of
+ * the HdrHistogram): each power of 2 is split in 32 buckets, so the value
+ * reported for an percentile is at most ~3% above the real value.<br><br>
+ *
+ * The buckets are striped counters (LongAdder) created on the first use, so
+ * threads recording at the same time don't contend. Values above ~36 minutes
+ * are counted in the last bucket.
+ *
+ */
+public class SFLatencyHistogram {
+
+    protected static final int SUB_BUCKET_BITS = 5;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    protected static final int MAX_EXPONENT = 40;
+    protected static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    protected final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+    protected final LongAdder sum = new LongAdder();
+    protected final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record an value
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int index = indexOf(nanos);
+        LongAdder bucket = buckets.get(index);
+        if (bucket == null) {
+            bucket = new LongAdder();
+            if (!buckets.compareAndSet(index, null, bucket)) {
+                bucket = buckets.get(index);
+            }
+        }
+        bucket.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    protected static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the highest value counted in an bucket
+     *
+     * @param index
+     * @return
+     */
+    protected static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = ((long) (SUB_BUCKETS + sub)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Copy the current values, the copy is not affected by new records
+     *
+     * @return
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            LongAdder bucket = buckets.get(i);
+            if (bucket != null) {
+                counts[i] = bucket.sum();
+                total += counts[i];
+            }
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    public static class Snapshot {
+
+        protected final long[] counts;
+        protected final long count;
+        protected final long sum;
+        protected final long max;
+
+        protected Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Get the value at an percentile
+         *
+         * @param percentile between 0 and 100 (ex: 99.9)
+         * @return the value in nanoseconds, 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Sum of all recorded values in nanoseconds
+         *
+         * @return
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+    }
+
+}
@@ -20,6 +20,8 @@ package br.com.uiltonsites.servletframework.utility;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.slf4j.Marker;
 import org.slf4j.helpers.FormattingTuple;
 import org.slf4j.helpers.MessageFormatter;
@@ -36,7 +38,17 @@ public class SFLogger implements org.slf4j.Logger {
      * getFQCN method.
      */
     protected static final String FQCN = SFLogger.class.getName();
+
+    /**
+     * The token of the logger, generated only when the first message is
+     * logged or getToken() is called, before that the field is null. An value
+     * assigned directly to the field is used as the token.
+     *
+     * @deprecated use getToken() and newToken(String)
+     */
+    @Deprecated
     public String token;
+    private volatile boolean tokenPending;
     
     protected final String TAG_START = "##### START #####";
     protected final String TAG_END = "##### END #####";
@@ -54,25 +66,53 @@ public class SFLogger implements org.slf4j.Logger {
     public static String SUFIX = "";
     
 
+    /**
+     * The loggers of log4j are shared by all instances, so the lookup in the
+     * repository is made only once by class/name
+     */
+    private static final ClassValue<Logger> CLASS_TARGETS = new ClassValue<Logger>() {
+        @Override
+        protected Logger computeValue(Class<?> clazz) {
+            return Logger.getLogger(clazz);
+        }
+    };
+    private static final ConcurrentMap<String, Logger> NAME_TARGETS = new ConcurrentHashMap<>();
+
     private SFLogger(Class clazz) {
-        this.target = Logger.getLogger(clazz);
-        token = SFToken.getToken();
+        this.target = getTarget(clazz);
+        this.tokenPending = true;
     }
     
     private SFLogger(String name) {
-        this.target = Logger.getLogger(name);
-        token = SFToken.getToken();
+        this.target = getTarget(name);
+        this.tokenPending = true;
     }
     
     private SFLogger(Class clazz, String token) {
-        this.target = Logger.getLogger(clazz);
+        this.target = getTarget(clazz);
         this.token = token;
     }
     
     private SFLogger(String name, String token) {
-        this.target = Logger.getLogger(name);
+        this.target = getTarget(name);
         this.token = token;
     }
+
+    private static Logger getTarget(Class clazz) {
+        return CLASS_TARGETS.get(clazz);
+    }
+
+    private static Logger getTarget(String name) {
+        Logger target = NAME_TARGETS.get(name);
+        if (target == null) {
+            target = Logger.getLogger(name);
+            Logger old = NAME_TARGETS.putIfAbsent(name, target);
+            if (old != null) {
+                target = old;
+            }
+        }
+        return target;
+    }
     
     static public SFLogger getLogger(String name) {
         SFLogger self = new SFLogger(name);
@@ -95,11 +135,33 @@ public class SFLogger implements org.slf4j.Logger {
     }
 
     public void newToken() {
-        this.token = SFToken.getToken();
+        this.token = null;
+        this.tokenPending = true;
     }
     
     public void newToken(String token) {
         this.token = token;
+        this.tokenPending = false;
+    }
+
+    /**
+     * Get the token, generating it if this is the first use
+     *
+     * @return
+     */
+    public String getToken() {
+        if (tokenPending) {
+            synchronized (this) {
+                if (tokenPending) {
+                    // keep an token assigned to the field
+                    if (token == null) {
+                        token = SFToken.getToken();
+                    }
+                    tokenPending = false;
+                }
+            }
+        }
+        return token;
     }
     
     public void log(String message, Level level, Throwable t) {
@@ -323,6 +385,7 @@ public class SFLogger implements org.slf4j.Logger {
         if (msg == null) {
             return "";
         }
+        String token = getToken();
         if (token != null && !token.isEmpty()) {
             return "["+token+"] " + getPrefix() + msg.toString() + getSufix();
         } else {
@@ -331,6 +394,7 @@ public class SFLogger implements org.slf4j.Logger {
     }
     
     private String start(String msg) {
+        String token = getToken();
         if (msg != null && !msg.isEmpty()) {
             return "["+token+"] #" + msg+" => " + TAG_START;
         } else {
@@ -339,6 +403,7 @@ public class SFLogger implements org.slf4j.Logger {
     }
     
     private String end(String msg) {
+        String token = getToken();
         if (msg != null && !msg.isEmpty()) {
             return "["+token+"] #" + msg+" => " + TAG_END;
         } else {
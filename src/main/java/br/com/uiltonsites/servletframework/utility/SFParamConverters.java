@@ -0,0 +1,488 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import br.com.uiltonsites.servletframework.interfaces.SFParamConverter;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the converters used to convert Strings to typed values, shared by
+ * SFServletContainer.getParameter(name, defaultValue, clazz), SFRequestParam,
+ * SFPathParam and SFConfig.load.<br><br>
+ *
+ * Invalid input never throw exception, the converters just return null, and
+ * the primitive types share the converter of their wrappers.<br>
+ * Enums and arrays (comma separated) are resolved automatically, other types
+ * can be added with {@link #register(Class, SFParamConverter)}.
+ *
+ */
+public final class SFParamConverters {
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final String LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE);
+
+    private static final ConcurrentMap<Class<?>, SFParamConverter<?>> converters = new ConcurrentHashMap<>();
+
+    static {
+        SFParamConverter<String> stringConverter = value -> value;
+        SFParamConverter<Integer> intConverter = SFParamConverters::toInteger;
+        SFParamConverter<Long> longConverter = SFParamConverters::toLong;
+        SFParamConverter<Short> shortConverter = value -> {
+            long v = parseDecimal(value, Short.MIN_VALUE, Short.MAX_VALUE);
+            return v == INVALID ? null : (short) v;
+        };
+        SFParamConverter<Byte> byteConverter = value -> {
+            long v = parseDecimal(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+            return v == INVALID ? null : (byte) v;
+        };
+        SFParamConverter<Double> doubleConverter = SFParamConverters::toDouble;
+        SFParamConverter<Float> floatConverter = value -> {
+            String t = value.trim();
+            return isDecimal(t, true) ? Float.valueOf(t) : null;
+        };
+        SFParamConverter<Boolean> booleanConverter = value -> value.equalsIgnoreCase("true") || value.equals("1");
+        SFParamConverter<Character> charConverter = value -> value.length() == 1 ? value.charAt(0) : null;
+
+        converters.put(String.class, stringConverter);
+        converters.put(Integer.class, intConverter);
+        converters.put(int.class, intConverter);
+        converters.put(Long.class, longConverter);
+        converters.put(long.class, longConverter);
+        converters.put(Short.class, shortConverter);
+        converters.put(short.class, shortConverter);
+        converters.put(Byte.class, byteConverter);
+        converters.put(byte.class, byteConverter);
+        converters.put(Double.class, doubleConverter);
+        converters.put(double.class, doubleConverter);
+        converters.put(Float.class, floatConverter);
+        converters.put(float.class, floatConverter);
+        converters.put(Boolean.class, booleanConverter);
+        converters.put(boolean.class, booleanConverter);
+        converters.put(Character.class, charConverter);
+        converters.put(char.class, charConverter);
+
+        converters.put(BigDecimal.class, (SFParamConverter<BigDecimal>) value -> isDecimal(value, false) ? new BigDecimal(value) : null);
+        converters.put(BigInteger.class, (SFParamConverter<BigInteger>) value -> isInteger(value) ? new BigInteger(value) : null);
+        converters.put(UUID.class, (SFParamConverter<UUID>) value -> isUUID(value) ? UUID.fromString(value) : null);
+
+        // dates: ISO-8601, java.util.Date also accept epoch millis
+        converters.put(LocalDate.class, (SFParamConverter<LocalDate>) value -> {
+            try {
+                return LocalDate.parse(value);
+            } catch (DateTimeException ex) {
+                return null;
+            }
+        });
+        converters.put(LocalDateTime.class, (SFParamConverter<LocalDateTime>) value -> {
+            try {
+                return LocalDateTime.parse(value);
+            } catch (DateTimeException ex) {
+                return null;
+            }
+        });
+        converters.put(LocalTime.class, (SFParamConverter<LocalTime>) value -> {
+            try {
+                return LocalTime.parse(value);
+            } catch (DateTimeException ex) {
+                return null;
+            }
+        });
+        converters.put(OffsetDateTime.class, (SFParamConverter<OffsetDateTime>) value -> {
+            try {
+                return OffsetDateTime.parse(value);
+            } catch (DateTimeException ex) {
+                return null;
+            }
+        });
+        converters.put(Instant.class, (SFParamConverter<Instant>) SFParamConverters::toInstant);
+        converters.put(Date.class, (SFParamConverter<Date>) value -> {
+            Instant instant = toInstant(value);
+            return instant == null ? null : new Date(instant.toEpochMilli());
+        });
+    }
+
+    private SFParamConverters() {
+    }
+
+    /**
+     * Register (or replace) the converter of an type
+     *
+     * @param <T>
+     * @param clazz
+     * @param converter
+     */
+    public static <T> void register(Class<T> clazz, SFParamConverter<? extends T> converter) {
+        converters.put(clazz, converter);
+    }
+
+    /**
+     * Get the converter of an type
+     *
+     * @param clazz
+     * @return the converter, or null if theres no converter for that type
+     */
+    public static SFParamConverter<?> get(Class<?> clazz) {
+        SFParamConverter<?> converter = converters.get(clazz);
+        if (converter != null) {
+            return converter;
+        }
+        if (clazz.isEnum()) {
+            converter = new EnumConverter(clazz);
+        } else if (clazz.isArray() && get(clazz.getComponentType()) != null) {
+            converter = new ArrayConverter(clazz.getComponentType());
+        } else {
+            return null;
+        }
+        SFParamConverter<?> previous = converters.putIfAbsent(clazz, converter);
+        return previous != null ? previous : converter;
+    }
+
+    /**
+     * Convert an String to the clazz type, or return defaultValue if could not
+     * convert or value is null.<br>
+     * Types without converter are cast directly (ClassCastException if the
+     * type is not compatible with String)
+     *
+     * @param <T>
+     * @param value
+     * @param defaultValue
+     * @param clazz
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T convert(String value, Object defaultValue, Class<T> clazz) {
+        if (value == null) {
+            return (T) defaultValue;
+        }
+        SFParamConverter<?> converter = get(clazz);
+        if (converter == null) {
+            return clazz.cast(value);
+        }
+        Object converted = converter.convert(value);
+        return (T) (converted == null ? defaultValue : converted);
+    }
+
+    /**
+     * Convert multiple values of the same parameter to an array type
+     *
+     * @param values
+     * @param arrayType
+     * @return the array or null if any value is invalid
+     */
+    public static Object convertArray(String[] values, Class<?> arrayType) {
+        SFParamConverter<?> converter = get(arrayType);
+        if (!(converter instanceof ArrayConverter)) {
+            return null;
+        }
+        return ((ArrayConverter) converter).convert(values);
+    }
+
+    /**
+     * Get the value used by java for an primitive field not initialized (0,
+     * false, etc)
+     *
+     * @param clazz
+     * @return the value or null if clazz is not primitive
+     */
+    public static Object primitiveDefault(Class<?> clazz) {
+        if (!clazz.isPrimitive() || clazz == void.class) {
+            return null;
+        }
+        return Array.get(Array.newInstance(clazz, 1), 0);
+    }
+
+    /**
+     * Parse an int without throwing exception
+     *
+     * @param value
+     * @param defaultValue
+     * @return the value or defaultValue if value is null or invalid
+     */
+    public static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        long v = parseDecimal(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return v == INVALID ? defaultValue : (int) v;
+    }
+
+    /**
+     * Parse an long without throwing exception
+     *
+     * @param value
+     * @param defaultValue
+     * @return the value or defaultValue if value is null or invalid
+     */
+    public static long parseLong(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        long v = parseDecimal(value, Long.MIN_VALUE, Long.MAX_VALUE);
+        return v == INVALID && !value.equals(LONG_MIN_VALUE) ? defaultValue : v;
+    }
+
+    /**
+     * Parse an double without throwing exception
+     *
+     * @param value
+     * @param defaultValue
+     * @return the value or defaultValue if value is null or invalid
+     */
+    public static double parseDouble(String value, double defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        String t = value.trim();
+        return isDecimal(t, true) ? Double.parseDouble(t) : defaultValue;
+    }
+
+    private static Integer toInteger(String value) {
+        long v = parseDecimal(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return v == INVALID ? null : (int) v;
+    }
+
+    private static Long toLong(String value) {
+        long v = parseDecimal(value, Long.MIN_VALUE, Long.MAX_VALUE);
+        return v == INVALID && !value.equals(LONG_MIN_VALUE) ? null : v;
+    }
+
+    private static Double toDouble(String value) {
+        String t = value.trim();
+        return isDecimal(t, true) ? Double.valueOf(t) : null;
+    }
+
+    private static Instant toInstant(String value) {
+        long millis = parseDecimal(value, Long.MIN_VALUE, Long.MAX_VALUE);
+        if (millis != INVALID) {
+            return Instant.ofEpochMilli(millis);
+        }
+        try {
+            if (value.length() <= 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant();
+            }
+            char last = value.charAt(value.length() - 1);
+            if (last == 'Z' || last == 'z') {
+                return Instant.parse(value);
+            }
+            if (value.indexOf('+', 10) > 0 || value.indexOf('-', 10) > 0) {
+                return OffsetDateTime.parse(value).toInstant();
+            }
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse an decimal integer (optional sign followed by ascii digits)
+     *
+     * @return the value, or INVALID if the syntax is invalid or the value is
+     * out of range
+     */
+    private static long parseDecimal(String s, long min, long max) {
+        int len = s.length();
+        if (len == 0) {
+            return INVALID;
+        }
+
+        int i = 0;
+        boolean negative = false;
+        char first = s.charAt(0);
+        if (first == '-' || first == '+') {
+            if (len == 1) {
+                return INVALID;
+            }
+            negative = first == '-';
+            i = 1;
+        }
+
+        // accumulate negatively, same as Long.parseLong, to reach Long.MIN_VALUE
+        long limit = negative ? min : -max;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < len; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                return INVALID;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return INVALID;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static boolean isInteger(String s) {
+        int len = s.length();
+        int i = len > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+') ? 1 : 0;
+        if (i == len) {
+            return false;
+        }
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check the syntax of an decimal number: [sign] digits [. digits] [e [sign]
+     * digits], when javaSyntax is true also accept NaN, Infinity and the
+     * suffixes f/d (same as Double.valueOf)
+     */
+    private static boolean isDecimal(String s, boolean javaSyntax) {
+        int len = s.length();
+        int i = 0;
+        if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            i++;
+        }
+        if (javaSyntax && (s.startsWith("NaN", i) || s.startsWith("Infinity", i))) {
+            return s.length() - i == (s.charAt(i) == 'N' ? 3 : 8);
+        }
+        if (javaSyntax && len > i + 1) {
+            char last = s.charAt(len - 1);
+            if (last == 'f' || last == 'F' || last == 'd' || last == 'D') {
+                len--;
+            }
+        }
+
+        int digits = 0;
+        while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+            digits++;
+        }
+        if (i < len && s.charAt(i) == '.') {
+            i++;
+            while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < len && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < len && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                i++;
+            }
+            int expDigits = 0;
+            while (i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                i++;
+                expDigits++;
+            }
+            if (expDigits == 0) {
+                return false;
+            }
+        }
+        return i == len;
+    }
+
+    private static boolean isUUID(String s) {
+        if (s.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converter of enums, by name (case sensitive first, then case insensitive)
+     */
+    private static class EnumConverter implements SFParamConverter<Object> {
+
+        private final Map<String, Object> byName = new HashMap<>();
+        private final Map<String, Object> byUpperName = new HashMap<>();
+
+        EnumConverter(Class<?> clazz) {
+            for (Object constant : clazz.getEnumConstants()) {
+                String name = ((Enum<?>) constant).name();
+                byName.put(name, constant);
+                byUpperName.put(name.toUpperCase(Locale.ROOT), constant);
+            }
+        }
+
+        @Override
+        public Object convert(String value) {
+            Object constant = byName.get(value);
+            return constant != null ? constant : byUpperName.get(value.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Converter of arrays, the values are separated by comma
+     */
+    private static class ArrayConverter implements SFParamConverter<Object> {
+
+        private final Class<?> componentType;
+        private final SFParamConverter<?> converter;
+
+        ArrayConverter(Class<?> componentType) {
+            this.componentType = componentType;
+            this.converter = get(componentType);
+        }
+
+        @Override
+        public Object convert(String value) {
+            return value.isEmpty() ? Array.newInstance(componentType, 0) : convert(value.split(","));
+        }
+
+        Object convert(String[] values) {
+            Object array = Array.newInstance(componentType, values.length);
+            for (int i = 0; i < values.length; i++) {
+                Object v = converter.convert(values[i].trim());
+                if (v == null) {
+                    return null;
+                }
+                Array.set(array, i, v);
+            }
+            return array;
+        }
+    }
+
+}
@@ -23,6 +23,9 @@ import br.com.uiltonsites.servletframework.abstracts.SFMyLogger;
 import br.com.uiltonsites.servletframework.interfaces.SFQueryRow;
 import br.com.uiltonsites.servletframework.utility.exceptions.SFQueryHelperException;
 import br.com.uiltonsites.servletframework.utility.exceptions.SFLoadConfigException;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.sql.*;
 import javax.sql.*;
@@ -35,12 +38,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.sql.rowset.RowSetProvider;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import org.apache.commons.dbutils.BasicRowProcessor;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Level;
@@ -58,7 +61,6 @@ public class SFQueryHelper extends SFMyLogger {
     private static Map<String, DataSource> dataSource = new HashMap<>();
     protected Pattern pattern = Pattern.compile("^.*(?=(?:SELECT)|(?:UPDATE)|(?:DELETE))");
     Matcher matcher;
-    private static final Gson gsonpp = new GsonBuilder().setPrettyPrinting().create();
 
     protected StringBuilder insertBatch;
     protected String insertBatchBase;
@@ -67,6 +69,20 @@ public class SFQueryHelper extends SFMyLogger {
 
     protected Level logLevelQuery = Level.DEBUG;
     protected Level logLevelResult = Level.TRACE;
+    protected Level logLevelSlowQuery = Level.WARN;
+
+    /** log only 1 in N queries (and their results) */
+    protected int logSampleRate = 1;
+    /** max rows of an result that are logged, 0 for unlimited */
+    protected int logMaxRows = 0;
+    /** max chars of an result that are logged, 0 for unlimited */
+    protected int logMaxChars = 0;
+    /** when 0 or more, only the queries that take at least this ms are logged */
+    protected long slowQueryThreshold = -1;
+
+    /** state of the logging of the last statement */
+    protected boolean queryLogged;
+    protected long queryStart;
 
     public int resultSetType = ResultSet.TYPE_SCROLL_INSENSITIVE;
     public int resultSetConcurrency = ResultSet.CONCUR_READ_ONLY;
@@ -128,6 +144,7 @@ public class SFQueryHelper extends SFMyLogger {
     }
 
     public Connection getConnection() throws SFLoadConfigException, SQLException {
+        checkDeadline();
         if (globalConnection == null) {
             return getConnection(0);
         } else {
@@ -190,6 +207,108 @@ public class SFQueryHelper extends SFMyLogger {
         this.logLevelResult = logLevelResult;
     }
 
+    public Level getLogLevelSlowQuery() {
+        return logLevelSlowQuery;
+    }
+
+    public void setLogLevelSlowQuery(Level logLevelSlowQuery) {
+        this.logLevelSlowQuery = logLevelSlowQuery;
+    }
+
+    public int getLogSampleRate() {
+        return logSampleRate;
+    }
+
+    /**
+     * Log only 1 in N queries, chosen at random
+     *
+     * @param logSampleRate 1 to log all
+     */
+    public void setLogSampleRate(int logSampleRate) {
+        this.logSampleRate = logSampleRate;
+    }
+
+    public int getLogMaxRows() {
+        return logMaxRows;
+    }
+
+    /**
+     * @param logMaxRows max rows of an result that are logged, 0 for unlimited
+     */
+    public void setLogMaxRows(int logMaxRows) {
+        this.logMaxRows = logMaxRows;
+    }
+
+    public int getLogMaxChars() {
+        return logMaxChars;
+    }
+
+    /**
+     * @param logMaxChars max chars of an result that are logged, 0 for unlimited
+     */
+    public void setLogMaxChars(int logMaxChars) {
+        this.logMaxChars = logMaxChars;
+    }
+
+    public long getSlowQueryThreshold() {
+        return slowQueryThreshold;
+    }
+
+    /**
+     * Log only the queries that take at least the specified time, with the
+     * level logLevelSlowQuery
+     *
+     * @param slowQueryThreshold ms, -1 to log all the queries
+     */
+    public void setSlowQueryThreshold(long slowQueryThreshold) {
+        this.slowQueryThreshold = slowQueryThreshold;
+    }
+
+    /**
+     * Decide if the statement will be logged and log the query, the sql with
+     * the parameters is only built if the level is enabled
+     *
+     * @param sql
+     * @param parameters
+     */
+    protected void logQuery(String sql, Object... parameters) {
+        queryStart = System.nanoTime();
+        queryLogged = slowQueryThreshold < 0 && (logSampleRate <= 1 || ThreadLocalRandom.current().nextInt(logSampleRate) == 0);
+        if (queryLogged && logger.isLevelEnabled(logLevelQuery)) {
+            logger.log("QUERY: " + generateActualSql(sql, parameters), logLevelQuery);
+        }
+    }
+
+    /**
+     * Log the result of the statement (and the query, if slow), the result is
+     * only formatted if it will be logged
+     *
+     * @param sql
+     * @param parameters
+     * @param result an number, an CachedRowSet or null if the result is not
+     * logged
+     * @throws SQLException
+     */
+    protected void logQueryResult(String sql, Object[] parameters, Object result) throws SQLException {
+        if (slowQueryThreshold >= 0) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - queryStart);
+            if (elapsed < slowQueryThreshold || !logger.isLevelEnabled(logLevelSlowQuery)) {
+                return;
+            }
+            logger.log("SLOW QUERY (" + elapsed + " ms): " + generateActualSql(sql, parameters), logLevelSlowQuery);
+        } else if (!queryLogged) {
+            return;
+        }
+        if (result == null || !logger.isLevelEnabled(logLevelResult)) {
+            return;
+        }
+        if (result instanceof CachedRowSet) {
+            logger.log("Query Result: " + toJson((CachedRowSet) result), logLevelResult);
+        } else {
+            logger.log("Query Result: " + result, logLevelResult);
+        }
+    }
+
     protected String escapeString(String in) {
         StringBuilder out = new StringBuilder();
         for (int i = 0, j = in.length(); i < j; i++) {
@@ -262,7 +381,43 @@ public class SFQueryHelper extends SFMyLogger {
         return sb.toString().replaceAll("\\s+", " ");
     }
 
+    /**
+     * Fail if the deadline of the request attached to the current thread
+     * already passed, so no connection is taken from the pool
+     *
+     * @throws SQLTimeoutException
+     */
+    protected void checkDeadline() throws SQLTimeoutException {
+        SFDeadline deadline = SFDeadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            throw new SQLTimeoutException("Request deadline exceeded, query not executed");
+        }
+    }
+
+    /**
+     * Limit the query timeout of the statement by the time left to the
+     * deadline of the request attached to the current thread
+     *
+     * @param stmt
+     * @throws SQLException
+     */
+    protected void setStatementTimeout(Statement stmt) throws SQLException {
+        SFDeadline deadline = SFDeadline.current();
+        if (deadline == null) {
+            return;
+        }
+        int remaining = deadline.getRemainingSeconds();
+        if (remaining == 0) {
+            throw new SQLTimeoutException("Request deadline exceeded, query not executed");
+        }
+        int timeout = stmt.getQueryTimeout();
+        if (timeout == 0 || remaining < timeout) {
+            stmt.setQueryTimeout(remaining);
+        }
+    }
+
     protected PreparedStatement setStatement(PreparedStatement stmt, Connection con,  String sql, Object... parameters) throws SFLoadConfigException, SQLException, SFQueryHelperException {
+        setStatementTimeout(stmt);
         int numParameters = StringUtils.countMatches(sql, "?");
         if (parameters.length != numParameters) {
             throw new SFQueryHelperException("Numero de parametros na query incorretos, detectado " + numParameters + " '?' e foi passado " + parameters.length + " parametro(s)");
@@ -402,7 +557,7 @@ public class SFQueryHelper extends SFMyLogger {
             i++;
         }
 
-        logger.log("QUERY: " + generateActualSql(sql, parameters), logLevelQuery);
+        logQuery(sql, parameters);
 
         return stmt;
 
@@ -455,7 +610,7 @@ public class SFQueryHelper extends SFMyLogger {
             setStatement(stmt, con, sql, parameters);
 
             int result = stmt.executeUpdate();
-            logger.log("Query Result: " + result, logLevelResult);
+            logQueryResult(sql, parameters, result);
             return result;
         } catch (SQLException ex) {
             logger.error("DB Error Code: " + ex.getSQLState(), ex);
@@ -688,6 +843,8 @@ public class SFQueryHelper extends SFMyLogger {
 
             try (ResultSet rs = stmt.executeQuery()) {
 
+                logQueryResult(sql, parameters, null);
+
                 while (rs.next()) {
 
                     if (!callback.readRow(rs)) {
@@ -732,7 +889,7 @@ public class SFQueryHelper extends SFMyLogger {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 CachedRowSet rowset = newCachedRowSet(rs);
-                logger.log("Query Result: " + toJson(rowset), logLevelResult);
+                logQueryResult(sql, parameters, rowset);
                 return rowset;
             }
         } catch (SQLException ex) {
@@ -905,7 +1062,7 @@ public class SFQueryHelper extends SFMyLogger {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 CachedRowSet rowset = newCachedRowSet(rs);
-                logger.log("Query Result: " + toJson(rowset), logLevelResult);
+                logQueryResult(sql, parameters, rowset);
                 if (!rowset.next()) {
                     return null;
                 } else {
@@ -961,7 +1118,7 @@ public class SFQueryHelper extends SFMyLogger {
             if (b) {
                 try (ResultSet rs = stmt.getResultSet()) {
                     CachedRowSet rowset = newCachedRowSet(rs);
-                    logger.log("Query Result: " + toJson(rowset), logLevelResult);
+                    logQueryResult(sql, parameters, rowset);
                     return rowset;
                 }
             } else {
@@ -1796,8 +1953,61 @@ public class SFQueryHelper extends SFMyLogger {
         return list;
     }
 
+    /**
+     * Format the rows for the log, limited by logMaxRows and logMaxChars. The
+     * json is written directly from the rows and the cursor is restored to
+     * before the first row.
+     *
+     * @param crs
+     * @return
+     * @throws SQLException
+     */
     protected String toJson(CachedRowSet crs) throws SQLException {
-        return "\n" + gsonpp.toJson(resultSetToArrayList(crs));
+        StringWriter out = new StringWriter();
+        out.write('\n');
+        int rows = 0;
+        boolean truncated = false;
+        try {
+            JsonWriter json = new JsonWriter(out);
+            json.setIndent("  ");
+            json.setSerializeNulls(false);
+            ResultSetMetaData md = crs.getMetaData();
+            int columns = md.getColumnCount();
+
+            crs.beforeFirst();
+            json.beginArray();
+            while (crs.next()) {
+                if ((logMaxRows > 0 && rows >= logMaxRows) || (logMaxChars > 0 && out.getBuffer().length() > logMaxChars)) {
+                    truncated = true;
+                    break;
+                }
+                json.beginObject();
+                for (int i = 1; i <= columns; ++i) {
+                    json.name(md.getColumnName(i)).value(crs.getString(i));
+                }
+                json.endObject();
+                rows++;
+            }
+            if (!truncated) {
+                json.endArray();
+            }
+            json.flush();
+        } catch (IOException ex) {
+            // StringWriter don't throw IOException
+            throw new SQLException(ex);
+        } finally {
+            crs.beforeFirst();
+        }
+
+        StringBuffer sb = out.getBuffer();
+        if (logMaxChars > 0 && sb.length() > logMaxChars + 1) {
+            sb.setLength(logMaxChars + 1);
+            truncated = true;
+        }
+        if (truncated) {
+            sb.append("\n... (").append(crs.size()).append(" rows, ").append(rows).append(" logged)");
+        }
+        return sb.toString();
     }
 
     public void createInsertBatch(String insertQuery) {
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import br.com.uiltonsites.servletframework.interfaces.SFSerializer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the serializers used to write the objects returned by the
+ * SFWebMethod, by content type (ex: application/json), and the shared
+ * instances of the serialization libraries (they are thread safe and
+ * expensive to create).<br><br>
+ *
+ * application/json use Jackson, application/xml and text/xml use XStream.<br><br>
+ *
+ * Use the shared Gson/ObjectMapper instead of creating new ones, each instance
+ * keep its own cache of type adapters (built by reflection on the first use
+ * of each class).
+ *
+ */
+public final class SFSerializers {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final Gson GSON = new Gson();
+    private static final Gson PRETTY_GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private static final Map<String, SFSerializer> SERIALIZERS = new ConcurrentHashMap<>();
+
+    public static final SFSerializer JSON = new SFSerializer() {
+        @Override
+        public void write(Object value, OutputStream out) throws IOException {
+            OBJECT_MAPPER.writeValue(out, value);
+        }
+
+        @Override
+        public void write(Object value, Writer out) throws IOException {
+            OBJECT_MAPPER.writeValue(out, value);
+        }
+    };
+
+    public static final SFSerializer XML = new SFSerializer() {
+        @Override
+        public void write(Object value, OutputStream out) throws IOException {
+            // XStream use the default charset of the jvm with OutputStream
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            write(value, writer);
+            writer.flush();
+        }
+
+        @Override
+        public void write(Object value, Writer out) throws IOException {
+            XStreamHolder.XSTREAM.toXML(value, out);
+        }
+    };
+
+    static {
+        register("application/json", JSON);
+        register("application/xml", XML);
+        register("text/xml", XML);
+    }
+
+    /**
+     * XStream is created only when used. It's only used to write, so no type
+     * is allowed to be read (XStream 1.4.9 read any type by default, which
+     * allow remote code execution with an crafted xml)
+     */
+    private static final class XStreamHolder {
+
+        private static final XStream XSTREAM = create();
+
+        private static XStream create() {
+            XStream xstream = new XStream();
+            xstream.addPermission(NoTypePermission.NONE);
+            return xstream;
+        }
+    }
+
+    private SFSerializers() {
+    }
+
+    /**
+     * Get the shared Gson
+     *
+     * @return
+     */
+    public static Gson getGson() {
+        return GSON;
+    }
+
+    /**
+     * Get the shared Gson with pretty printing
+     *
+     * @return
+     */
+    public static Gson getPrettyGson() {
+        return PRETTY_GSON;
+    }
+
+    /**
+     * Get the shared ObjectMapper, must not be reconfigured after the first
+     * use
+     *
+     * @return
+     */
+    public static ObjectMapper getObjectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * Register (or replace) the serializer of an content type
+     *
+     * @param contentType ex: application/json
+     * @param serializer
+     */
+    public static void register(String contentType, SFSerializer serializer) {
+        SERIALIZERS.put(getMediaType(contentType), serializer);
+    }
+
+    /**
+     * Get the serializer of an content type, the parameters (ex: charset) are
+     * ignored
+     *
+     * @param contentType
+     * @return the serializer or null if there's no serializer for the type
+     */
+    public static SFSerializer get(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        return SERIALIZERS.get(getMediaType(contentType));
+    }
+
+    /**
+     * Get the content type without parameters, in lower case (ex:
+     * "Application/JSON; charset=UTF-8" to "application/json")
+     *
+     * @param contentType
+     * @return
+     */
+    public static String getMediaType(String contentType) {
+        int i = contentType.indexOf(';');
+        String mediaType = i >= 0 ? contentType.substring(0, i) : contentType;
+        return mediaType.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One value per thread, like an ThreadLocal, that can be cleared in all the
+ * threads at once.<br><br>
+ *
+ * The threads of the container outlive the webapp, the values left in an
+ * ThreadLocal keep the classloader of the webapp after it is undeployed. Here
+ * the ThreadLocal only hold an AtomicReference (an class of the JDK) and the
+ * slots are registered by thread (weak keys, the slot of an thread that died
+ * is collected), so clear() can empty the slots of all the threads.
+ *
+ */
+public class SFThreadSlots<T> {
+
+    protected final Map<Thread, AtomicReference<T>> registry = new WeakHashMap<>();
+    protected final ThreadLocal<AtomicReference<T>> slots = ThreadLocal.withInitial(this::register);
+
+    private AtomicReference<T> register() {
+        AtomicReference<T> slot = new AtomicReference<>();
+        synchronized (registry) {
+            registry.put(Thread.currentThread(), slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Get the value of the current thread
+     *
+     * @return the value or null
+     */
+    public T get() {
+        return slots.get().get();
+    }
+
+    /**
+     * Set the value of the current thread
+     *
+     * @param value
+     */
+    public void set(T value) {
+        slots.get().set(value);
+    }
+
+    /**
+     * Get and remove the value of the current thread
+     *
+     * @return the value or null
+     */
+    public T take() {
+        return slots.get().getAndSet(null);
+    }
+
+    /**
+     * Put the value in the slot of the current thread, only if the slot is
+     * empty
+     *
+     * @param value
+     * @return false if the thread already have an value
+     */
+    public boolean offer(T value) {
+        return slots.get().compareAndSet(null, value);
+    }
+
+    /**
+     * Remove the value of the current thread
+     */
+    public void remove() {
+        slots.get().set(null);
+    }
+
+    /**
+     * Remove the values of all the threads
+     *
+     * @return the removed values
+     */
+    public List<T> clear() {
+        List<T> values = new ArrayList<>();
+        synchronized (registry) {
+            for (AtomicReference<T> slot : registry.values()) {
+                T value = slot.getAndSet(null);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+        }
+        return values;
+    }
+
+}
@@ -19,29 +19,37 @@
 
 package br.com.uiltonsites.servletframework.utility;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author Uilton Oliveira - uilton.dev@gmail.com
  */
 public final class SFToken {
-	private final static int A_ASCII_CODE = 65;
-	private final static  int Z_ASCII_CODE = 90;
+	private final static char[] LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+	private final static char[] DIGITS = "0123456789".toCharArray();
+	private final static int LETTERS_SIZE = 6;
+	private final static int DIGITS_SIZE = 4;
 	
+	/**
+	 * Generate an token with 6 letters followed by 4 digits (ex: ABCDEF1234),
+	 * only the char array and the returned string are allocated
+	 * 
+	 * @return 
+	 */
 	public static String getToken() {
 		
-            String token = "";
-            Random random = new Random();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            char[] token = new char[LETTERS_SIZE + DIGITS_SIZE];
 
-            for(int idx = 0; idx < 6;  idx++) {
-                    token += (char)(random.nextInt(Z_ASCII_CODE - A_ASCII_CODE) + A_ASCII_CODE);
+            for(int idx = 0; idx < LETTERS_SIZE;  idx++) {
+                    token[idx] = LETTERS[random.nextInt(LETTERS.length)];
             }
 
-            for(int idx = 0; idx < 4;  idx++) {
-                    token += (random.nextInt(9));
+            for(int idx = LETTERS_SIZE; idx < token.length;  idx++) {
+                    token[idx] = DIGITS[random.nextInt(DIGITS.length)];
             }
 
-            return token;
+            return new String(token);
 	}
 
 }
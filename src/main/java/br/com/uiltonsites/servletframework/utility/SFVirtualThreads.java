@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Give access to the virtual threads (JDK 21+) without requiring it to compile
+ * the framework, on older versions isSupported() return false.<br><br>
+ *
+ * The jar built with JDK 21 contain an version of this class (multi-release)
+ * that use the api directly.
+ *
+ */
+public final class SFVirtualThreads {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private SFVirtualThreads() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Return true if the JVM support virtual threads
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return EXECUTOR != null;
+    }
+
+    /**
+     * Get an executor that start an new virtual thread for each task
+     *
+     * @return the executor or null if not supported
+     */
+    public static Executor getExecutor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Return true if the thread is an virtual thread
+     *
+     * @param thread
+     * @return false if not supported
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable ex) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.utility;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Version of SFVirtualThreads used on JDK 21+ (META-INF/versions/21)
+ *
+ */
+public final class SFVirtualThreads {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private SFVirtualThreads() {
+    }
+
+    /**
+     * Return true if the JVM support virtual threads
+     *
+     * @return
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Get an executor that start an new virtual thread for each task
+     *
+     * @return
+     */
+    public static Executor getExecutor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Return true if the thread is an virtual thread
+     *
+     * @param thread
+     * @return
+     */
+    public static boolean isVirtual(Thread thread) {
+        return thread.isVirtual();
+    }
+
+}
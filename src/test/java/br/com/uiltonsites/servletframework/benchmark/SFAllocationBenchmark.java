@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.benchmark;
+
+import br.com.uiltonsites.servletframework.http.SFHttpServlet;
+import br.com.uiltonsites.servletframework.http.SFPathParam;
+import br.com.uiltonsites.servletframework.interfaces.SFInstanceScope;
+import br.com.uiltonsites.servletframework.interfaces.SFWebMethod;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Measure the bytes allocated per request by SFHttpServlet, with
+ * recycleContext disabled and enabled, calling an route with pathVars
+ * through doGet with an fake request and response.<br><br>
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=br.com.uiltonsites.servletframework.benchmark.SFAllocationBenchmark
+ * <br>
+ * Needs an HotSpot JVM (com.sun.management.ThreadMXBean).
+ *
+ */
+@SFInstanceScope(SFInstanceScope.Scope.SINGLETON)
+public class SFAllocationBenchmark extends SFHttpServlet {
+
+    protected static final int REQUESTS = 200000;
+
+    @SFWebMethod(name = "user", pathVars = "{id}/photo")
+    public String user(@SFPathParam(name = "id") String id) {
+        return id;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SFAllocationBenchmark servlet = new SFAllocationBenchmark();
+        servlet.init();
+        HttpServletRequest request = newRequest("/user/42/photo");
+        HttpServletResponse response = newResponse();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (boolean recycle : new boolean[]{false, true, false, true}) {
+            servlet.setRecycleContext(recycle);
+            // warm up
+            for (int i = 0; i < REQUESTS; i++) {
+                servlet.doGet(request, response);
+            }
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < REQUESTS; i++) {
+                servlet.doGet(request, response);
+            }
+            long after = threads.getThreadAllocatedBytes(thread);
+            System.out.println("recycleContext=" + recycle + ": " + (after - before) / REQUESTS + " bytes/request");
+        }
+    }
+
+    private static HttpServletRequest newRequest(String pathInfo) {
+        Map<String, String[]> parameters = Collections.emptyMap();
+        return (HttpServletRequest) Proxy.newProxyInstance(SFAllocationBenchmark.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getPathInfo":
+                    return pathInfo;
+                case "getMethod":
+                    return METHOD_GET;
+                case "getParameterMap":
+                    return parameters;
+                case "isAsyncSupported":
+                case "isAsyncStarted":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static HttpServletResponse newResponse() {
+        ServletOutputStream stream = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        PrintWriter writer = new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return (HttpServletResponse) Proxy.newProxyInstance(SFAllocationBenchmark.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getOutputStream":
+                    return stream;
+                case "getWriter":
+                    return writer;
+                case "getCharacterEncoding":
+                    return "UTF-8";
+                case "getStatus":
+                    return 200;
+                case "isCommitted":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+}
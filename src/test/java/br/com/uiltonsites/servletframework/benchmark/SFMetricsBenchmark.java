@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package br.com.uiltonsites.servletframework.benchmark;
+
+import br.com.uiltonsites.servletframework.http.SFRouteMetrics;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measure the overhead of the route metrics per request: start(), two
+ * System.nanoTime() and end(), the same calls made by SFHttpServlet around
+ * the method of the route. The cpu time of an loop with only the two
+ * nanoTime() is subtracted. The target is under 100ns per request.<br><br>
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=br.com.uiltonsites.servletframework.benchmark.SFMetricsBenchmark
+ * [-Dexec.args="threads..."]
+ *
+ */
+public class SFMetricsBenchmark {
+
+    protected static final int REQUESTS = 20000000;
+    protected static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int[] threads = args.length > 0 ? new int[args.length] : cpus > 1 ? new int[]{1, cpus} : new int[]{1};
+        for (int i = 0; i < args.length; i++) {
+            threads[i] = Integer.parseInt(args[i]);
+        }
+        for (int n : threads) {
+            double clock = 0;
+            double metrics = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                // the last round is measured, the others are warm up
+                clock = run(n, null);
+                metrics = run(n, new SFRouteMetrics("benchmark"));
+            }
+            System.out.printf("threads=%d nanoTime=%.1fns metrics=%.1fns overhead=%.1fns/request%n", n, clock, metrics, metrics - clock);
+        }
+    }
+
+    /**
+     * Run the requests in n threads
+     *
+     * @param n
+     * @param metrics null to measure only the clock
+     * @return cpu nanoseconds per request
+     */
+    private static double run(int n, SFRouteMetrics metrics) throws InterruptedException {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        int perThread = REQUESTS / n;
+        long[] cpu = new long[n];
+        long[] sink = new long[n];
+        Thread[] workers = new Thread[n];
+        for (int t = 0; t < n; t++) {
+            final int index = t;
+            workers[t] = new Thread(() -> {
+                long sum = 0;
+                long cpuStart = mx.getCurrentThreadCpuTime();
+                for (int i = 0; i < perThread; i++) {
+                    long begin = System.nanoTime();
+                    if (metrics != null) {
+                        metrics.start();
+                        metrics.end(200, System.nanoTime() - begin);
+                    } else {
+                        sum += System.nanoTime() - begin;
+                    }
+                }
+                cpu[index] = mx.getCurrentThreadCpuTime() - cpuStart;
+                sink[index] = sum;
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long total = 0;
+        for (long c : cpu) {
+            total += c;
+        }
+        return (double) total / ((long) perThread * n);
+    }
+
+}